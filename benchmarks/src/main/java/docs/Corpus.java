@@ -0,0 +1,125 @@
+package docs;
+
+import com.sun.source.doctree.DocTree;
+import com.sun.source.doctree.DocTreeVisitor;
+import com.sun.source.doctree.TextTree;
+import com.sun.source.doctree.UnknownBlockTagTree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Synthetic test suites for the benchmarks
+ */
+final class Corpus {
+
+    static final int TESTS_PER_GROUP = 100;
+
+    private Corpus() {
+    }
+
+    /**
+     * @return Test groups with the given total number of specifications, at most {@value #TESTS_PER_GROUP} per group
+     */
+    static TestSheetDoclet.TestGroups testGroups(int specifications) {
+        final var testGroups = new TestSheetDoclet.TestGroups();
+        for (int g = 0; g * TESTS_PER_GROUP < specifications; g++) {
+            final var typeName = "acme.tests.Group" + g + "Test";
+            final var group = new TestSheetDoclet.TestGroup();
+            group.id = String.valueOf(g + 1);
+            group.name = "Group " + (g + 1);
+            testGroups.addTestGroup(typeName, group);
+
+            for (int t = 0; t < TESTS_PER_GROUP && g * TESTS_PER_GROUP + t < specifications; t++) {
+                final var test = new TestSheetDoclet.TestSpecification();
+                fillTestSpecification(test, group.id + "." + (t + 1));
+                testGroups.addTestSpecification(typeName, test);
+            }
+        }
+        return testGroups;
+    }
+
+    /**
+     * @return The raw block tags of a test method doc comment, as javadoc hands them to the doclet
+     */
+    static List<DocTree> methodTags(int test) {
+        final List<DocTree> tags = new ArrayList<>();
+        tags.add(tag("id", "1." + test));
+        tags.add(tag("name", "Log in as an existing user", "with a valid password"));
+        tags.add(tag("precondition", "The user exists"));
+        tags.add(tag("precondition", "The user is\n     not locked out"));
+        for (int s = 1; s <= 4; s++) {
+            tags.add(tag("step", "Enter the user name and password of an existing user,\n     then press", "{@code Log in}"));
+            tags.add(tag("expectedResult", "The start page is shown"));
+        }
+        return tags;
+    }
+
+    /**
+     * Fills a specification with the same content as {@link #methodTags(int)} parses into
+     */
+    private static void fillTestSpecification(TestSheetDoclet.TestSpecification test, String id) {
+        test.id = id;
+        test.name = "Log in as an existing user with a valid password";
+        test.preconditions.add("The user exists");
+        test.preconditions.add("The user is not locked out");
+        for (int s = 1; s <= 4; s++) {
+            final var step = new TestSheetDoclet.TestStep();
+            step.action = "Enter the user name and password of an existing user, then press Log in";
+            step.expectedResults.add("The start page is shown");
+            test.steps.add(step);
+        }
+    }
+
+    private static UnknownBlockTagTree tag(String tagName, String... content) {
+        final List<DocTree> nodes = new ArrayList<>();
+        for (String text : content) {
+            nodes.add(text(text));
+        }
+        return new UnknownBlockTagTree() {
+            @Override
+            public String getTagName() {
+                return tagName;
+            }
+
+            @Override
+            public List<? extends DocTree> getContent() {
+                return nodes;
+            }
+
+            @Override
+            public Kind getKind() {
+                return Kind.UNKNOWN_BLOCK_TAG;
+            }
+
+            @Override
+            public <R, D> R accept(DocTreeVisitor<R, D> visitor, D data) {
+                return visitor.visitUnknownBlockTag(this, data);
+            }
+        };
+    }
+
+    private static TextTree text(String body) {
+        return new TextTree() {
+            @Override
+            public String getBody() {
+                return body;
+            }
+
+            @Override
+            public Kind getKind() {
+                return Kind.TEXT;
+            }
+
+            @Override
+            public <R, D> R accept(DocTreeVisitor<R, D> visitor, D data) {
+                return visitor.visitText(this, data);
+            }
+
+            @Override
+            public String toString() {
+                return body;
+            }
+        };
+    }
+}
@@ -0,0 +1,53 @@
+package docs;
+
+import com.sun.source.doctree.DocTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses the block tags of test method doc comments, the innermost loop of the doclet
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TagParsingBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int specifications;
+
+    private List<List<DocTree>> comments;
+
+    @Setup
+    public void setUp() {
+        comments = new ArrayList<>(specifications);
+        for (int i = 0; i < specifications; i++) {
+            comments.add(Corpus.methodTags(i));
+        }
+    }
+
+    @Benchmark
+    public void parseMethodDocs(Blackhole blackhole) {
+        for (List<DocTree> tags : comments) {
+            final var testSpecification = new TestSheetDoclet.TestSpecification();
+            TestSheetDoclet.METHOD_TAGS.apply(testSpecification, tags);
+            blackhole.consume(testSpecification);
+        }
+    }
+}
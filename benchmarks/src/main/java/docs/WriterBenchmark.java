@@ -0,0 +1,69 @@
+package docs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the whole sheet for suites of increasing size with each writer. Run with {@code -prof gc} for allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriterBenchmark {
+
+    @Param({"10", "1000", "10000", "100000"})
+    public int specifications;
+
+    private TestSheetDoclet.TestGroups testGroups;
+    private Path output;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        testGroups = Corpus.testGroups(specifications);
+        output = Files.createTempFile("writer-benchmark", ".xml");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(output);
+    }
+
+    @Benchmark
+    public void jacksonWriter() {
+        new JacksonWriter(testGroups).write(output.toString());
+    }
+
+    @Benchmark
+    public void jacksonWriterStreaming() {
+        new JacksonWriter(testGroups).writeStreaming(output.toString());
+    }
+
+    @Benchmark
+    public void testSheetWriter() {
+        new TestSheetWriter(testGroups).write(output.toString());
+    }
+
+    @Benchmark
+    public void testSheetWriterStreaming() {
+        new TestSheetWriter(testGroups).writeStreaming(output.toString());
+    }
+}
@@ -0,0 +1,38 @@
+#!/bin/sh
+# Measures the startup of bin/testsheet with and without the class-data-sharing archive of the cds profile, by timing
+# runs on the training sources, where starting the JVM and loading the doclet dominate.
+#
+# Usage: mvn package -Pcds && benchmarks/startup.sh [runs]
+set -e
+
+base=$(cd "$(dirname "$0")/.." && pwd)
+runs=${1:-10}
+work=$(mktemp -d)
+trap 'rm -rf "$work"' EXIT
+
+if [ ! -f "$base/target/cds/testsheet.jsa" ]; then
+    echo "Build the archive first: mvn package -Pcds" >&2
+    exit 1
+fi
+
+measure() {
+    total=0
+    i=0
+    while [ "$i" -lt "$runs" ]; do
+        start=$(date +%s%N)
+        (cd "$work" && TESTSHEET_CDS=$1 "$base/bin/testsheet" -quiet -sourcepath "$base/src/cds/training" acme.training > /dev/null)
+        end=$(date +%s%N)
+        total=$((total + (end - start) / 1000000))
+        i=$((i + 1))
+    done
+    echo "$((total / runs))"
+}
+
+# Warm the file system cache before measuring
+measure off > /dev/null
+
+without=$(measure off)
+with=$(measure on)
+echo "Average startup over $runs runs"
+echo "  without archive: $without ms"
+echo "  with archive:    $with ms"
@@ -0,0 +1,32 @@
+package acme.training;
+
+/**
+ * Sources documented by the training run of the class-data-sharing archive, see the cds profile
+ *
+ * @id 1
+ * @name Login
+ */
+public class LoginTest {
+
+    /**
+     * @id 1.1
+     * @name Log in with a valid password
+     * @precondition A user exists
+     * @step Open the login page
+     * @step Enter the user name and password
+     * @expectedResult The start page is shown
+     * @expectedResult The user name is shown in the header
+     */
+    public void validPassword() {
+    }
+
+    /**
+     * @id 1.2
+     * @name Log in with an invalid password
+     * @precondition A user exists
+     * @step Enter the user name and a wrong password
+     * @expectedResult An error is shown
+     */
+    public void invalidPassword() {
+    }
+}
@@ -0,0 +1,139 @@
+package docs;
+
+import javax.tools.DocumentationTool;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Runs the {@link TestSheetDoclet} extraction over many source roots, such as the modules of a repository, within one
+ * JVM, and writes all test groups to a single sheet. Every root gets its own in-process javadoc run on a thread pool.
+ */
+public class BatchExtractor {
+
+    private final List<String> javadocOptions;
+    private final int threads;
+
+    /**
+     * @param javadocOptions Passed to every javadoc run, such as {@code --class-path} or {@code -private}
+     * @param threads        The number of roots extracted at the same time
+     */
+    BatchExtractor(List<String> javadocOptions, int threads) {
+        this.javadocOptions = javadocOptions;
+        this.threads = threads;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String format = "xml";
+        boolean streaming = false;
+        boolean parallelWrite = false;
+        boolean gzip = false;
+        String outputFile = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        final List<String> javadocOptions = new ArrayList<>();
+        final List<Path> roots = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--format":
+                    format = args[++i];
+                    if (!TestSheetDoclet.FORMATS.contains(format)) {
+                        throw new IllegalArgumentException("Unsupported format: " + format);
+                    }
+                    break;
+                case "--streaming":
+                    streaming = true;
+                    break;
+                case "--parallel-write":
+                    parallelWrite = true;
+                    break;
+                case "--gzip":
+                    gzip = true;
+                    break;
+                case "--output":
+                    outputFile = args[++i];
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--class-path":
+                    javadocOptions.add("--class-path");
+                    javadocOptions.add(args[++i]);
+                    break;
+                case "-private":
+                    javadocOptions.add("-private");
+                    break;
+                default:
+                    roots.add(Paths.get(args[i]));
+            }
+        }
+        if (roots.isEmpty()) {
+            System.err.println("Usage: BatchExtractor [--format <xml|xlsx|json|csv>] [--streaming] [--parallel-write] [--gzip] "
+                    + "[--output <file>] [--threads <n>] [--class-path <path>] [-private] <source root>...");
+            System.exit(2);
+        }
+
+        final var testGroups = new BatchExtractor(javadocOptions, Math.min(threads, roots.size())).extract(roots);
+        if (outputFile == null) {
+            outputFile = TestSheetDoclet.outputFileName(format, gzip);
+        }
+        TestSheetDoclet.writeSheet(testGroups, format, streaming, parallelWrite,
+                gzip ? OutputSink.gzip(OutputSink.file()) : OutputSink.file(), outputFile);
+        System.out.println(String.format("Wrote acceptance test sheet of %d source roots to: %s", roots.size(),
+                Paths.get(outputFile).toAbsolutePath()));
+    }
+
+    /**
+     * @return The test groups of all roots in one model, in id order. Groups with equal ids keep the order of their roots.
+     */
+    TestSheetDoclet.TestGroups extract(List<Path> roots) throws IOException, InterruptedException {
+        final var executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<TestSheetDoclet.TestGroups>> extracted = new ArrayList<>();
+            for (Path root : roots) {
+                extracted.add(executor.submit(() -> extract(root)));
+            }
+
+            final var testGroups = new TestSheetDoclet.TestGroups();
+            for (Future<TestSheetDoclet.TestGroups> rootGroups : extracted) {
+                testGroups.addAll(rootGroups.get());
+            }
+            return testGroups;
+        } catch (ExecutionException err) {
+            throw new RuntimeException(err.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private TestSheetDoclet.TestGroups extract(Path root) throws IOException {
+        final var files = SourceScanner.javaFiles(List.of(root));
+        if (files.isEmpty()) {
+            return new TestSheetDoclet.TestGroups();
+        }
+
+        final DocumentationTool tool = ToolProvider.getSystemDocumentationTool();
+        final var key = root.toAbsolutePath().toString();
+        final List<String> options = new ArrayList<>(javadocOptions);
+        options.add("-quiet");
+        options.add("--collect");
+        options.add(key);
+
+        try (var fileManager = tool.getStandardFileManager(null, null, UTF_8)) {
+            final var task = tool.getTask(null, fileManager, null, TestSheetDoclet.class, options,
+                    fileManager.getJavaFileObjectsFromPaths(files));
+            if (!task.call()) {
+                throw new IllegalStateException("javadoc failed for " + root);
+            }
+        }
+        return TestSheetDoclet.COLLECTED.remove(key);
+    }
+}
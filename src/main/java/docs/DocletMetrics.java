@@ -0,0 +1,267 @@
+package docs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jdk.jfr.AnnotationElement;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.ValueDescriptor;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-phase instrumentation of a doclet run. Every phase records its wall time and the bytes allocated while it ran,
+ * and is emitted to JFR as a {@code docs.DocletPhase} event. The summary is written as JSON at the end of the run.
+ * <p>
+ * The allocated bytes are approximate. They are the growth of the per-thread counters of the threads alive when the
+ * phase ends, so a thread that ends during the phase, such as an idle fork-join worker, takes its bytes with it.
+ */
+class DocletMetrics {
+
+    private static final Phase NO_PHASE = () -> {
+    };
+    private static final Map<Long, Long> NOT_MEASURED = Map.of();
+
+    private static final PhaseEvents PHASE_EVENTS = PhaseEvents.create();
+
+    private final boolean enabled;
+    private final List<Map<String, Object>> phases = new ArrayList<>();
+    private final Map<String, Object> counters = new LinkedHashMap<>();
+    // Sheets may be written from several threads at once
+    private final LongAdder outputBytes = new LongAdder();
+    private final LongAdder outputNanos = new LongAdder();
+    private final long startNanos = System.nanoTime();
+    private long elementsVisited = 0;
+
+    private DocletMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    static DocletMetrics enabled() {
+        return new DocletMetrics(true);
+    }
+
+    static DocletMetrics disabled() {
+        return new DocletMetrics(false);
+    }
+
+    /**
+     * Starts timing a phase, which lasts until {@link Phase#end()} is called on the returned phase
+     */
+    Phase startPhase(String name) {
+        if (!enabled) {
+            return NO_PHASE;
+        }
+
+        final var event = PHASE_EVENTS.begin(name);
+        final var allocatedBefore = allocatedBytes();
+        final long start = System.nanoTime();
+
+        return () -> {
+            final long wallNanos = System.nanoTime() - start;
+            final long allocated = allocatedSince(allocatedBefore);
+            PHASE_EVENTS.commit(event, allocated);
+
+            final Map<String, Object> phase = new LinkedHashMap<>();
+            phase.put("name", name);
+            phase.put("wallTimeMillis", wallNanos / 1_000_000.0);
+            phase.put("allocatedBytes", allocated);
+            phases.add(phase);
+        };
+    }
+
+    void elementVisited() {
+        elementsVisited++;
+    }
+
+    /**
+     * Records a count of the run, such as the number of test groups or bytes written
+     */
+    void count(String name, long value) {
+        counters.put(name, value);
+    }
+
+    /**
+     * @return A sink that counts the bytes written to the given sink and the time spent inside it, covering buffering,
+     * compression and disk writes
+     */
+    OutputSink instrument(OutputSink sink) {
+        if (!enabled) {
+            return sink;
+        }
+        return filename -> new FilterOutputStream(sink.open(filename)) {
+            @Override
+            public void write(int b) throws IOException {
+                final long start = System.nanoTime();
+                out.write(b);
+                outputNanos.add(System.nanoTime() - start);
+                outputBytes.increment();
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                final long start = System.nanoTime();
+                out.write(bytes, offset, length);
+                outputNanos.add(System.nanoTime() - start);
+                outputBytes.add(length);
+            }
+
+            @Override
+            public void close() throws IOException {
+                final long start = System.nanoTime();
+                super.close();
+                outputNanos.add(System.nanoTime() - start);
+            }
+        };
+    }
+
+    void write(Path file) {
+        if (!enabled) {
+            return;
+        }
+
+        final Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("wallTimeMillis", (System.nanoTime() - startNanos) / 1_000_000.0);
+        summary.put("elementsVisited", elementsVisited);
+        summary.putAll(counters);
+        summary.put("bytesSerialized", outputBytes.sum());
+        summary.put("outputTimeMillis", outputNanos.sum() / 1_000_000.0);
+        summary.put("phases", phases);
+        try {
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), summary);
+        } catch (IOException err) {
+            throw new RuntimeException(err);
+        }
+    }
+
+    /**
+     * @return The bytes allocated so far by each live thread, by thread id, or none if the JVM cannot measure it
+     */
+    private static Map<Long, Long> allocatedBytes() {
+        final var threadBean = ManagementFactory.getThreadMXBean();
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+            return NOT_MEASURED;
+        }
+        final var threads = (com.sun.management.ThreadMXBean) threadBean;
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+            return NOT_MEASURED;
+        }
+
+        final long[] threadIds = threads.getAllThreadIds();
+        final long[] allocated = threads.getThreadAllocatedBytes(threadIds);
+        final Map<Long, Long> byThread = new HashMap<>();
+        for (int i = 0; i < threadIds.length; i++) {
+            // Threads that ended since their ids were read report -1
+            if (allocated[i] >= 0) {
+                byThread.put(threadIds[i], allocated[i]);
+            }
+        }
+        return byThread;
+    }
+
+    /**
+     * @return The bytes allocated by the live threads since the given counters were read, threads started since then
+     * count from zero
+     */
+    private static long allocatedSince(Map<Long, Long> before) {
+        long total = 0;
+        for (Map.Entry<Long, Long> thread : allocatedBytes().entrySet()) {
+            total += Math.max(0, thread.getValue() - before.getOrDefault(thread.getKey(), 0L));
+        }
+        return total;
+    }
+
+    @FunctionalInterface
+    interface Phase {
+
+        void end();
+    }
+
+    /**
+     * Emits phases as {@code docs.DocletPhase} JFR events. The event type is created through {@code jdk.jfr.EventFactory}
+     * and driven through method handles, as javac cannot resolve {@code jdk.jfr.Event} when compiling with
+     * {@code --release} on a newer JDK.
+     */
+    private static class PhaseEvents {
+
+        private final Object factory;
+        private final MethodHandle newEvent;
+        private final MethodHandle set;
+        private final MethodHandle begin;
+        private final MethodHandle commit;
+
+        private PhaseEvents(Object factory, MethodHandle newEvent, MethodHandle set, MethodHandle begin, MethodHandle commit) {
+            this.factory = factory;
+            this.newEvent = newEvent;
+            this.set = set;
+            this.begin = begin;
+            this.commit = commit;
+        }
+
+        static PhaseEvents create() {
+            try {
+                final var lookup = MethodHandles.publicLookup();
+                final var eventClass = Class.forName("jdk.jfr.Event");
+                final var factoryClass = Class.forName("jdk.jfr.EventFactory");
+                final var factory = factoryClass.getMethod("create", List.class, List.class).invoke(null,
+                        List.of(
+                                new AnnotationElement(Name.class, "docs.DocletPhase"),
+                                new AnnotationElement(Label.class, "Doclet Phase"),
+                                new AnnotationElement(Category.class, new String[]{"TestSheetDoclet"}),
+                                new AnnotationElement(Description.class, "A phase of generating the acceptance test sheet")
+                        ),
+                        List.of(
+                                new ValueDescriptor(String.class, "phase", List.of(new AnnotationElement(Label.class, "Phase"))),
+                                new ValueDescriptor(long.class, "allocatedBytes", List.of(new AnnotationElement(Label.class, "Allocated Bytes")))
+                        ));
+                return new PhaseEvents(factory,
+                        lookup.unreflect(factoryClass.getMethod("newEvent")),
+                        lookup.unreflect(eventClass.getMethod("set", int.class, Object.class)),
+                        lookup.unreflect(eventClass.getMethod("begin")),
+                        lookup.unreflect(eventClass.getMethod("commit")));
+            } catch (ReflectiveOperationException | LinkageError err) {
+                // JFR is not available in this JVM, phases are still measured
+                return new PhaseEvents(null, null, null, null, null);
+            }
+        }
+
+        Object begin(String phase) {
+            if (factory == null) {
+                return null;
+            }
+            try {
+                final Object event = newEvent.invoke(factory);
+                set.invoke(event, 0, phase);
+                begin.invoke(event);
+                return event;
+            } catch (Throwable err) {
+                throw new RuntimeException(err);
+            }
+        }
+
+        void commit(Object event, long allocatedBytes) {
+            if (event == null) {
+                return;
+            }
+            try {
+                set.invoke(event, 1, allocatedBytes);
+                commit.invoke(event);
+            } catch (Throwable err) {
+                throw new RuntimeException(err);
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package docs;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.lang.model.element.ElementKind;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * On-disk cache of the test groups and specifications extracted from a source file. Entries are keyed by a hash of the
+ * file content and the element kinds read, so an unchanged file can be merged into the
+ * {@link TestSheetDoclet.TestGroups} without parsing its doc comments again.
+ */
+class ExtractionCache {
+
+    /**
+     * Part of every key, bump whenever the extracted model or the way tags are parsed changes
+     */
+    private static final String FORMAT_VERSION = "4";
+
+    private final Path directory;
+    private final ObjectMapper mapper;
+    private final Map<String, Entry> modified = new HashMap<>();
+
+    ExtractionCache(Path directory) {
+        this.directory = directory;
+        this.mapper = new ObjectMapper()
+                .setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE)
+                .setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY)
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    /**
+     * @param taggedKinds The element kinds whose doc comments are read, as a run with other kinds extracts other tests
+     *                    from the same file
+     * @return The content hash used as the key for the given source file
+     */
+    String hash(JavaFileObject sourceFile, Set<ElementKind> taggedKinds) {
+        final var digest = newDigest();
+        digest.update(FORMAT_VERSION.getBytes(UTF_8));
+        final var kinds = taggedKinds.stream().map(ElementKind::name).sorted().collect(Collectors.joining(",", "", "\n"));
+        digest.update(kinds.getBytes(UTF_8));
+        try (InputStream in = sourceFile.openInputStream()) {
+            final var buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return toHex(digest.digest());
+        } catch (IOException err) {
+            throw new RuntimeException(err);
+        }
+    }
+
+    /**
+     * @return The docs extracted from the given top level type, if its source file is unchanged since they were stored
+     */
+    Optional<List<CachedDocs>> lookup(String fileHash, String typeName) {
+        return Optional.ofNullable(load(fileHash).types.get(typeName));
+    }
+
+    void store(String fileHash, String typeName, List<CachedDocs> docs) {
+        final var entry = load(fileHash);
+        entry.types.put(typeName, docs);
+        modified.put(fileHash, entry);
+    }
+
+    /**
+     * Writes all entries stored during this run to disk
+     */
+    void flush() {
+        try {
+            Files.createDirectories(directory);
+            for (Map.Entry<String, Entry> entry : modified.entrySet()) {
+                mapper.writeValue(entryFile(entry.getKey()).toFile(), entry.getValue());
+            }
+            modified.clear();
+        } catch (IOException err) {
+            throw new RuntimeException(err);
+        }
+    }
+
+    private Entry load(String fileHash) {
+        final var pending = modified.get(fileHash);
+        if (pending != null) {
+            return pending;
+        }
+
+        final var file = entryFile(fileHash);
+        if (!Files.isRegularFile(file)) {
+            return new Entry();
+        }
+        try {
+            return mapper.readValue(file.toFile(), Entry.class);
+        } catch (IOException err) {
+            // A corrupt or outdated entry is treated as a cache miss and overwritten
+            return new Entry();
+        }
+    }
+
+    private Path entryFile(String fileHash) {
+        return directory.resolve(fileHash + ".json");
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException err) {
+            throw new RuntimeException(err);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        final var hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * All top level types of one source file, mapped to the docs extracted from them in visitation order
+     */
+    static class Entry {
+
+        Map<String, List<CachedDocs>> types = new LinkedHashMap<>();
+    }
+
+    /**
+     * The result of parsing the doc comment of a single element, exactly one of the test group and specification is set
+     */
+    static class CachedDocs {
+
+        String typeName;
+        TestSheetDoclet.TestGroup testGroup;
+        TestSheetDoclet.TestSpecification testSpecification;
+    }
+}
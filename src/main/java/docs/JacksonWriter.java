@@ -1,27 +1,62 @@
 package docs;
 
+import com.ctc.wstx.stax.WstxInputFactory;
 import com.ctc.wstx.stax.WstxOutputFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 import com.fasterxml.jackson.dataformat.xml.JacksonXmlModule;
+import com.fasterxml.jackson.dataformat.xml.XmlFactory;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
-import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlText;
+import com.fasterxml.jackson.dataformat.xml.ser.ToXmlGenerator;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
 
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
 import javax.xml.stream.XMLOutputFactory;
-import java.io.PrintStream;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.fasterxml.jackson.databind.SerializationFeature.FAIL_ON_EMPTY_BEANS;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 @SuppressWarnings("WeakerAccess")
 public class JacksonWriter {
 
     private static final String NS = "urn:schemas-microsoft-com:office:spreadsheet";
+    private static final String XML_PROLOG = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n<?mso-application progid=\"Excel.Sheet\"?>\n";
+
+    /**
+     * The namespaces declared by the workbook element, which worksheets rendered on their own must not declare again
+     */
+    private static final NamespaceContext WORKBOOK_NAMESPACES = new OrderedFragments.DeclaredNamespaces(Map.of("", NS, "ss", NS));
+
+    private static final String DATA_TYPE = "String";
+
+    private static final String INPUT_CELL_STYLE = "inputCellStyle";
+    private static final String LABEL_CELL_STYLE = "labelCellStyle";
+    private static final String CENTERED_LABEL_CELL_STYLE = "centeredLabelCellStyle";
+
+    private static final int COLUMN_WIDTH = 100;
+    // Points per character, found by trial-and-error and depends on font type
+    private static final double CHARACTER_WIDTH = 4.5;
+
     private TestSheetDoclet.TestGroups testGroups;
+    private final OutputSink outputSink;
 
     public static void main(String[] args) throws JsonProcessingException {
         final var workbook = new Workbook();
@@ -33,14 +68,14 @@ public class JacksonWriter {
         worksheet.addColumn(100);
         worksheet.addColumn(200);
         worksheet.addRow(
-                new Cell("123", null, "Foo!"),
-                new Cell("456", null, "Foo!"),
-                new Cell("789", null, "Foo!"),
-                new Cell("123", null, "Foo!"),
-                new Cell("123", null, "Foo!"),
-                new Cell("123", null, "Foo!"),
-                new Cell("123", null, "Foo!"),
-                new Cell(null, null, "Bar!")
+                new Cell("123", "Foo!"),
+                new Cell("456", "Foo!"),
+                new Cell("789", "Foo!"),
+                new Cell("123", "Foo!"),
+                new Cell("123", "Foo!"),
+                new Cell("123", "Foo!"),
+                new Cell("123", "Foo!"),
+                new Cell(null, "Bar!")
         );
         worksheet.addRow(
                 new Cell("123", 7, "Boom!")
@@ -61,124 +96,419 @@ public class JacksonWriter {
     }
 
     JacksonWriter(TestSheetDoclet.TestGroups testGroups) {
+        this(testGroups, OutputSink.file());
+    }
+
+    JacksonWriter(TestSheetDoclet.TestGroups testGroups, OutputSink outputSink) {
         this.testGroups = testGroups;
+        this.outputSink = outputSink;
     }
 
     void write(String filename) {
-        final var inputCellStyle = "inputCellStyle";
-        final var labelCellStyle = "labelCellStyle";
-        final var centeredLabelCellStyle = "centeredLabelCellStyle";
+        final var workbook = createWorkbook();
 
-        final var workbook = new Workbook();
-        workbook.addStyle(inputCellStyle, new Font(false, "#000000", "Calibri"), null, null);
-        workbook.addStyle(labelCellStyle, new Font(true, "#FFFFFF", "Calibri"), null, new Interior("#5ba49a", "Solid"));
-        workbook.addStyle(centeredLabelCellStyle, new Font(true, "#FFFFFF", "Calibri"), new Alignment("Center"), new Interior("#5ba49a", "Solid"));
+        for (TestSheetDoclet.TestGroup testGroup : testGroups.groups()) {
+            addTestGroup(testGroup, workbook.addWorksheet(worksheetName(testGroup)));
+        }
+
+        try (var out = outputSink.open(filename)) {
+            out.write(XML_PROLOG.getBytes(UTF_8));
+            // Serialize straight into the stream, rather than into a String first
+            Shared.WORKBOOK_WRITER.writeValue(out, workbook);
+        } catch (Exception err) {
+            throw new RuntimeException(err);
+        }
 
-        for (TestSheetDoclet.TestGroup testGroup : testGroups.testGroups) {
-            final var worksheet = workbook.addWorksheet(String.format("%s - %s", testGroup.id, testGroup.name));
+    }
 
-            // Create 5 columns of appropriate width
-            for (int i = 0; i < 5; i++) {
-                worksheet.addColumn(100);
+    /**
+     * Streaming variant of {@link #write(String)}. Rather than building the complete {@link Workbook} graph
+     * and serializing it in one go, each row is written to an {@link XMLStreamWriter} as soon as it has been
+     * laid out, so memory use stays flat regardless of the number of tests.
+     *
+     * @param filename The filename to write the generated Excel file to
+     */
+    void writeStreaming(String filename) {
+        final var workbook = createWorkbook();
+
+        try (var out = outputSink.open(filename)) {
+            // Required processing instructions
+            out.write(XML_PROLOG.getBytes(UTF_8));
+
+            final var xml = Shared.OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+            writeWorkbookStart(xml, workbook);
+            for (TestSheetDoclet.TestGroup testGroup : testGroups.groups()) {
+                writeWorksheet(xml, testGroup);
             }
 
-            for (TestSheetDoclet.TestSpecification test : testGroup.tests) {
-                worksheet.addRow(
-                        new Cell(labelCellStyle, "Test number"),
-                        new Cell(inputCellStyle, 2, test.id),
-                        new Cell(labelCellStyle, "Tested by"),
-                        new Cell(inputCellStyle, 2, "")
-                );
-
-                worksheet.addRow(
-                        new Cell(labelCellStyle, "Test name"),
-                        new Cell(inputCellStyle, 2, test.name),
-                        new Cell(labelCellStyle, "Tested on"),
-                        new Cell(inputCellStyle, 2, "")
-                );
-
-                worksheet.addRow(
-                        new Cell(labelCellStyle, "Precondition"),
-                        new Cell(labelCellStyle, 4, "")
-                );
-
-                int preCondNum = 1;
-                for (String precondition : test.preconditions) {
-                    worksheet.addRow(
-                            new Cell(centeredLabelCellStyle, String.valueOf(preCondNum++)),
-                            new Cell(inputCellStyle, 2, precondition),
-                            new Cell(labelCellStyle, 2, "")
-                    );
-                }
+            xml.writeEndElement();
+            xml.close();
+        } catch (Exception err) {
+            throw new RuntimeException(err);
+        }
+    }
+
+    /**
+     * Parallel variant of {@link #writeStreaming(String)}. Every worksheet is rendered into its own buffer on the common
+     * fork-join pool, and the buffers are written after the styles in group order. The output is identical.
+     *
+     * @param filename The filename to write the generated Excel file to
+     */
+    void writeParallel(String filename) {
+        final var workbook = createWorkbook();
+
+        try (var out = outputSink.open(filename)) {
+            out.write(XML_PROLOG.getBytes(UTF_8));
+
+            final var xml = Shared.OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+            writeWorkbookStart(xml, workbook);
+            xml.flush();
+
+            OrderedFragments.write(out, testGroups.groups(), (testGroup, fragment) -> {
+                final var fragmentXml = Shared.OUTPUT_FACTORY.createXMLStreamWriter(fragment, "UTF-8");
+                fragmentXml.setNamespaceContext(WORKBOOK_NAMESPACES);
+                writeWorksheet(fragmentXml, testGroup);
+                fragmentXml.close();
+            });
+
+            xml.writeEndElement();
+            xml.close();
+        } catch (Exception err) {
+            throw new RuntimeException(err);
+        }
+    }
+
+    /**
+     * Opens the root element, declaring the namespaces used by all worksheets, and writes the styles
+     */
+    private static void writeWorkbookStart(XMLStreamWriter xml, Workbook workbook) throws XMLStreamException {
+        xml.writeStartElement("", "Workbook", NS);
+        xml.writeDefaultNamespace(NS);
+        xml.writeNamespace("ss", NS);
+
+        xml.writeStartElement("", "Styles", NS);
+        for (Style style : workbook.styles.styleList) {
+            writeStyle(xml, style);
+        }
+        xml.writeEndElement();
+    }
+
+    private static void writeWorksheet(XMLStreamWriter xml, TestSheetDoclet.TestGroup testGroup) throws XMLStreamException {
+        xml.writeStartElement("", "Worksheet", NS);
+        xml.writeAttribute("ss", NS, "Name", worksheetName(testGroup));
+        xml.writeStartElement("", "Table", NS);
+        addTestGroup(testGroup, new StreamingTable(xml));
+        xml.writeEndElement();
+        xml.writeEndElement();
+    }
+
+    static Workbook createWorkbook() {
+        final var workbook = new Workbook();
+        workbook.addStyle(INPUT_CELL_STYLE, new Font(false, "#000000", "Calibri"), null, null);
+        workbook.addStyle(LABEL_CELL_STYLE, new Font(true, "#FFFFFF", "Calibri"), null, new Interior("#5ba49a", "Solid"));
+        workbook.addStyle(CENTERED_LABEL_CELL_STYLE, new Font(true, "#FFFFFF", "Calibri"), new Alignment("Center"), new Interior("#5ba49a", "Solid"));
+        return workbook;
+    }
+
+    static String worksheetName(TestSheetDoclet.TestGroup testGroup) {
+        return String.format("%s - %s", testGroup.id, testGroup.name);
+    }
+
+    /**
+     * Lays out all tests of a group as rows of the given table. Shared by the object graph, the streaming and the xlsx writer.
+     */
+    static void addTestGroup(TestSheetDoclet.TestGroup testGroup, TableSink table) {
+        startTable(testGroup, table);
+        for (TestSheetDoclet.TestSpecification test : testGroup.tests) {
+            addTest(test, table);
+        }
+    }
+
+    /**
+     * Adds the columns of the worksheet of a group, sized by its layout, before any of its tests are added
+     */
+    static void startTable(TestSheetDoclet.TestGroup testGroup, TableSink table) {
+        final var layout = testGroup.layout;
+        // Per test: 15 cells in the header rows, 3 per precondition, 4 per step and 5 per additional expected result.
+        // The id, name and precondition cells span 3 columns, as do the "Tested by" and "Tested on" inputs.
+        table.reserve(layout.rows(),
+                layout.tests * 15 + layout.preconditions * 3 + layout.steps * 4 + layout.additionalResults * 5,
+                layout.tests * 5 + layout.preconditions * 2);
+
+        // The action and expected result columns fit their longest text, the comment column has double width
+        table.addColumn(COLUMN_WIDTH);
+        table.addColumn(textColumnWidth(layout.maxActionLength));
+        table.addColumn(textColumnWidth(layout.maxExpectedResultLength));
+        table.addColumn(COLUMN_WIDTH);
+        table.addColumn(2 * COLUMN_WIDTH);
+    }
+
+    /**
+     * Lays out a single test as rows of the given table
+     */
+    static void addTest(TestSheetDoclet.TestSpecification test, TableSink table) {
+        final var inputCellStyle = INPUT_CELL_STYLE;
+        final var labelCellStyle = LABEL_CELL_STYLE;
+        final var centeredLabelCellStyle = CENTERED_LABEL_CELL_STYLE;
+
+        table.addRow(
+                new Cell(labelCellStyle, "Test number"),
+                new Cell(inputCellStyle, 2, test.id),
+                new Cell(labelCellStyle, "Tested by"),
+                new Cell(inputCellStyle, 2, "")
+        );
+
+        table.addRow(
+                new Cell(labelCellStyle, "Test name"),
+                new Cell(inputCellStyle, 2, test.name),
+                new Cell(labelCellStyle, "Tested on"),
+                new Cell(inputCellStyle, 2, "")
+        );
+
+        table.addRow(
+                new Cell(labelCellStyle, "Precondition"),
+                new Cell(labelCellStyle, 4, "")
+        );
+
+        int preCondNum = 1;
+        for (String precondition : test.preconditions) {
+            table.addRow(
+                    new Cell(centeredLabelCellStyle, String.valueOf(preCondNum++)),
+                    new Cell(inputCellStyle, 2, precondition),
+                    new Cell(labelCellStyle, 2, "")
+            );
+        }
+
+        table.addRow(
+                new Cell(labelCellStyle, "Step"),
+                new Cell(labelCellStyle, "Action"),
+                new Cell(labelCellStyle, "Expected result"),
+                new Cell(labelCellStyle, "Pass/fail"),
+                new Cell(labelCellStyle, "Comment")
+        );
 
-                worksheet.addRow(
-                        new Cell(labelCellStyle, "Step"),
-                        new Cell(labelCellStyle, "Action"),
-                        new Cell(labelCellStyle, "Expected result"),
-                        new Cell(labelCellStyle, "Pass/fail"),
-                        new Cell(labelCellStyle, "Comment")
-                );
-
-                int stepNum = 1;
-                for (TestSheetDoclet.TestStep step : test.steps) {
-                    worksheet.addRow(
-                            new Cell(centeredLabelCellStyle, String.valueOf(stepNum++)),
-                            new Cell(inputCellStyle, step.action),
+        int stepNum = 1;
+        for (TestSheetDoclet.TestStep step : test.steps) {
+            table.addRow(
+                    new Cell(centeredLabelCellStyle, String.valueOf(stepNum++)),
+                    new Cell(inputCellStyle, step.action),
+                    new Cell(inputCellStyle, step.expectedResults.isEmpty() ? "" : step.expectedResults.get(0)),
+                    new Cell(inputCellStyle, "")
+            );
+
+            if (step.expectedResults.size() > 1) {
+                for (String expectedResult : step.expectedResults.subList(1, step.expectedResults.size())) {
+                    table.addRow(
+                            new Cell(centeredLabelCellStyle, ""),
+                            new Cell(inputCellStyle, ""),
+                            new Cell(inputCellStyle, expectedResult),
                             new Cell(inputCellStyle, ""),
                             new Cell(inputCellStyle, "")
                     );
-
-                    if (step.expectedResults.size() > 1) {
-                        for (String expectedResult : step.expectedResults.subList(1, step.expectedResults.size())) {
-                            worksheet.addRow(
-                                    new Cell(centeredLabelCellStyle, ""),
-                                    new Cell(inputCellStyle, ""),
-                                    new Cell(inputCellStyle, expectedResult),
-                                    new Cell(inputCellStyle, ""),
-                                    new Cell(inputCellStyle, "")
-                            );
-                        }
-                    }
                 }
+            }
+        }
 
-                // Two empty rows as separators between tests
-                for (int i = 0; i < 2; i++) {
-                    worksheet.addRow();
-                }
+        // Two empty rows as separators between tests
+        for (int i = 0; i < 2; i++) {
+            table.addRow();
+        }
+    }
+
+    private static int textColumnWidth(int maxLength) {
+        return Math.max(COLUMN_WIDTH, (int) Math.ceil(maxLength * CHARACTER_WIDTH));
+    }
+
+    private static void writeStyle(XMLStreamWriter xml, Style style) throws XMLStreamException {
+        xml.writeStartElement("", "Style", NS);
+        xml.writeAttribute("ss", NS, "ID", style.id);
+        if (style.font != null) {
+            xml.writeEmptyElement("", "Font", NS);
+            xml.writeAttribute("ss", NS, "Bold", style.font.bold);
+            xml.writeAttribute("ss", NS, "Color", style.font.color);
+            xml.writeAttribute("ss", NS, "FontName", style.font.fontName);
+        }
+        if (style.alignment != null) {
+            xml.writeEmptyElement("", "Alignment", NS);
+            xml.writeAttribute("ss", NS, "Horizontal", style.alignment.horizontal);
+        }
+        if (style.interior != null) {
+            xml.writeEmptyElement("", "Interior", NS);
+            xml.writeAttribute("ss", NS, "Color", style.interior.color);
+            xml.writeAttribute("ss", NS, "Pattern", style.interior.pattern);
+        }
+        xml.writeEndElement();
+    }
+
+    /**
+     * The Jackson and Woodstox machinery, built and warmed up once per JVM on first use and shared by all writers.
+     * The Woodstox factories are created directly, so {@link XMLOutputFactory#newInstance()} and its service lookup
+     * are never involved.
+     */
+    static final class Shared {
+
+        static final WstxOutputFactory OUTPUT_FACTORY = new WstxOutputFactory();
+        static final ObjectWriter WORKBOOK_WRITER;
+
+        static {
+            final var xmlModule = new JacksonXmlModule();
+            xmlModule.setDefaultUseWrapper(false);
+            final var xmlMapper = new XmlMapper(new XmlFactory(new WstxInputFactory(), OUTPUT_FACTORY), xmlModule);
+            xmlMapper.configure(FAIL_ON_EMPTY_BEANS, false);
+            // Generated accessors instead of reflection for the public fields of the model
+            xmlMapper.registerModule(new AfterburnerModule());
+            WORKBOOK_WRITER = xmlMapper.writerFor(Workbook.class);
+
+            // Resolve the serializers of every model class now, rather than during the first real write
+            final var workbook = createWorkbook();
+            workbook.addWorksheet("warm-up").addRow(new Cell(INPUT_CELL_STYLE, 1, ""));
+            try {
+                WORKBOOK_WRITER.writeValue(OutputStream.nullOutputStream(), workbook);
+            } catch (IOException err) {
+                throw new UncheckedIOException(err);
             }
         }
 
-        System.out.println(this.getClass().getClassLoader());
+        private Shared() {
+        }
+    }
 
-        System.out.println("Check that we can get hold of class: " + WstxOutputFactory.class.getName());
+    /**
+     * Receives the columns and rows of a worksheet table as they are laid out
+     */
+    interface TableSink {
 
-        System.out.println("Setting javax.xml.stream.XMLOutputFactory to " + WstxOutputFactory.class.getName());
-        // Set the property
-        System.setProperty("javax.xml.stream.XMLOutputFactory", WstxOutputFactory.class.getName());
+        void addColumn(int width);
 
-        System.out.println("Trying to instantiate a new instance from XMLOutputFactory");
-        // Prepare for crash with ClassNotFound ...
-        System.out.println("XMLOutputFactory: " + XMLOutputFactory.newInstance().getClass());
-//        System.setProperty("javax.xml.stream.isRepairingNamespaces", "true");
-//        XMLOutputFactory.newInstance().setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, Boolean.TRUE);
+        void addRow(Cell... cells);
 
-        final var xmlModule = new JacksonXmlModule();
-        xmlModule.setDefaultUseWrapper(false);
-        final var xmlMapper = new XmlMapper(xmlModule)
-                .configure(FAIL_ON_EMPTY_BEANS, false)
-//                .enable(SerializationFeature.INDENT_OUTPUT)
-                ;
-
-        try {
-            final var out = new PrintStream(filename);
-            out.println("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>");
-            out.println("<?mso-application progid=\"Excel.Sheet\"?>");
-            out.println(xmlMapper.writeValueAsString(workbook));
+        /**
+         * Announces the size of the table before its columns and rows are added, so that it can be allocated at once
+         */
+        default void reserve(int rows, int cells, int mergedCells) {
+        }
+    }
+
+    /**
+     * Streams the sheet while a {@link MultiFormatWriter} visits the tests, the output is identical to
+     * {@link #writeStreaming(String)}
+     */
+    static class XmlRenderer implements MultiFormatWriter.Renderer {
+
+        private final OutputStream out;
+        private final XMLStreamWriter xml;
+        private final StreamingTable table;
+
+        XmlRenderer(OutputStream out) throws IOException {
+            this.out = out;
+            try {
+                this.xml = Shared.OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+            } catch (XMLStreamException err) {
+                throw new IOException(err);
+            }
+            this.table = new StreamingTable(xml);
+        }
+
+        @Override
+        public void start() {
+            try {
+                // The prolog goes straight to the stream, ahead of anything the XML writer buffers
+                out.write(XML_PROLOG.getBytes(UTF_8));
+                writeWorkbookStart(xml, createWorkbook());
+            } catch (IOException | XMLStreamException err) {
+                throw new RuntimeException(err);
+            }
+        }
+
+        @Override
+        public void startGroup(TestSheetDoclet.TestGroup group) {
+            try {
+                xml.writeStartElement("", "Worksheet", NS);
+                xml.writeAttribute("ss", NS, "Name", worksheetName(group));
+                xml.writeStartElement("", "Table", NS);
+            } catch (XMLStreamException err) {
+                throw new RuntimeException(err);
+            }
+            startTable(group, table);
+        }
+
+        @Override
+        public void addTest(TestSheetDoclet.TestSpecification test) {
+            JacksonWriter.addTest(test, table);
+        }
+
+        @Override
+        public void endGroup(TestSheetDoclet.TestGroup group) {
+            try {
+                xml.writeEndElement();
+                xml.writeEndElement();
+            } catch (XMLStreamException err) {
+                throw new RuntimeException(err);
+            }
+        }
+
+        @Override
+        public void finish() {
+            try {
+                xml.writeEndElement();
+                xml.close();
+            } catch (XMLStreamException err) {
+                throw new RuntimeException(err);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
             out.close();
-        } catch (Exception err) {
-            throw new RuntimeException(err);
         }
+    }
+
+    /**
+     * Writes columns and rows straight to the stream instead of keeping them in a {@link Table}
+     */
+    private static class StreamingTable implements TableSink {
+
+        private final XMLStreamWriter xml;
 
+        StreamingTable(XMLStreamWriter xml) {
+            this.xml = xml;
+        }
+
+        @Override
+        public void addColumn(int width) {
+            try {
+                xml.writeEmptyElement("", "Column", NS);
+                xml.writeAttribute("ss", NS, "Width", String.valueOf(width));
+            } catch (XMLStreamException err) {
+                throw new RuntimeException(err);
+            }
+        }
+
+        @Override
+        public void addRow(Cell... cells) {
+            try {
+                xml.writeStartElement("", "Row", NS);
+                for (Cell cell : cells) {
+                    xml.writeStartElement("", "Cell", NS);
+                    if (cell.styleId != null) {
+                        xml.writeAttribute("ss", NS, "StyleID", cell.styleId);
+                    }
+                    if (cell.mergeAcross > 0) {
+                        xml.writeAttribute("ss", NS, "MergeAcross", String.valueOf(cell.mergeAcross));
+                    }
+                    xml.writeStartElement("", "Data", NS);
+                    xml.writeAttribute("ss", NS, "Type", DATA_TYPE);
+                    if (cell.content != null) {
+                        xml.writeCharacters(cell.content);
+                    }
+                    xml.writeEndElement();
+                    xml.writeEndElement();
+                }
+                xml.writeEndElement();
+            } catch (XMLStreamException err) {
+                throw new RuntimeException(err);
+            }
+        }
     }
 
     @JacksonXmlRootElement(localName = "Workbook", namespace = NS)
@@ -188,6 +518,10 @@ public class JacksonWriter {
         @JacksonXmlProperty(localName = "Worksheet", namespace = NS)
         public List<Worksheet> worksheets = new ArrayList<>();
 
+        final List<String> sharedStrings = new ArrayList<>();
+        private final Map<String, Integer> sharedStringIndexes = new HashMap<>();
+        private final Map<String, Integer> styleIndexes = new HashMap<>();
+
         void addStyle(String id, Font font, Alignment alignment, Interior interior) {
             if (styles == null) {
                 styles = new Styles();
@@ -197,14 +531,42 @@ public class JacksonWriter {
             style.font = font;
             style.alignment = alignment;
             style.interior = interior;
+            styleIndexes.put(id, styles.styleList.size());
             styles.styleList.add(style);
         }
 
         Worksheet addWorksheet(String name) {
-            final var worksheet = new Worksheet(name);
+            final var worksheet = new Worksheet(this, name);
             worksheets.add(worksheet);
             return worksheet;
         }
+
+        /**
+         * @return The index of the style in {@link #styles}, or -1 for no style
+         */
+        int styleIndex(String styleId) {
+            if (styleId == null) {
+                return -1;
+            }
+            final var index = styleIndexes.get(styleId);
+            if (index == null) {
+                throw new IllegalArgumentException("Unknown style: " + styleId);
+            }
+            return index;
+        }
+
+        /**
+         * @return The index of the text in the shared strings, which holds every distinct cell text once, or -1 for no text
+         */
+        int intern(String text) {
+            if (text == null) {
+                return -1;
+            }
+            return sharedStringIndexes.computeIfAbsent(text, key -> {
+                sharedStrings.add(key);
+                return sharedStrings.size() - 1;
+            });
+        }
     }
 
     public static class Styles {
@@ -265,83 +627,193 @@ public class JacksonWriter {
         }
     }
 
-    public static class Worksheet {
+    public static class Worksheet implements TableSink {
         @JacksonXmlProperty(localName = "Name", namespace = NS, isAttribute = true)
         public String name;
 
         @JacksonXmlProperty(localName = "Table", namespace = NS)
         public Table table;
 
-        public Worksheet(String name) {
+        Worksheet(Workbook workbook, String name) {
             this.name = name;
+            this.table = new Table(workbook);
+        }
+
+        @Override
+        public void addColumn(int width) {
+            table.addColumn(width);
+        }
+
+        @Override
+        public void addRow(Cell... cells) {
+            table.addRow(cells);
+        }
+
+        @Override
+        public void reserve(int rows, int cells, int mergedCells) {
+            table.reserve(rows, cells);
+        }
+    }
+
+    /**
+     * The columns and rows of a worksheet, stored column-wise in primitive arrays. The cells of row {@code r} are the
+     * entries from {@code rowOffsets[r]} up to {@code rowOffsets[r + 1]} of the cell arrays, and their style and text
+     * are interned into the workbook, with -1 for a missing style or text.
+     */
+    @JsonSerialize(using = TableSerializer.class)
+    public static class Table {
+
+        private static final int INITIAL_CAPACITY = 64;
+
+        final Workbook workbook;
+
+        int[] columnWidths = new int[8];
+        int columnCount = 0;
+
+        int[] cellStyles = new int[INITIAL_CAPACITY];
+        int[] cellMerges = new int[INITIAL_CAPACITY];
+        int[] cellStrings = new int[INITIAL_CAPACITY];
+        int cellCount = 0;
+
+        int[] rowOffsets = new int[INITIAL_CAPACITY + 1];
+        int rowCount = 0;
+
+        Table(Workbook workbook) {
+            this.workbook = workbook;
         }
 
         void addColumn(int width) {
-            final var column = new Column();
-            column.width = String.valueOf(width);
-            if (table == null) {
-                table = new Table();
-            }
-            table.columns.add(column);
+            columnWidths = ensureCapacity(columnWidths, columnCount + 1);
+            columnWidths[columnCount++] = width;
         }
 
         void addRow(Cell... cells) {
-            final var row = new Row();
-            row.cells.addAll(Arrays.asList(cells));
-            if (table == null) {
-                table = new Table();
+            final int required = cellCount + cells.length;
+            cellStyles = ensureCapacity(cellStyles, required);
+            cellMerges = ensureCapacity(cellMerges, required);
+            cellStrings = ensureCapacity(cellStrings, required);
+            for (Cell cell : cells) {
+                cellStyles[cellCount] = workbook.styleIndex(cell.styleId);
+                cellMerges[cellCount] = cell.mergeAcross;
+                cellStrings[cellCount] = workbook.intern(cell.content);
+                cellCount++;
             }
-            table.rows.add(row);
+
+            rowOffsets = ensureCapacity(rowOffsets, rowCount + 2);
+            rowOffsets[++rowCount] = cellCount;
         }
-    }
 
-    public static class Table {
-        @JacksonXmlProperty(localName = "Column", namespace = NS)
-        public List<Column> columns = new ArrayList<>();
+        void reserve(int rows, int cells) {
+            cellStyles = ensureCapacity(cellStyles, cellCount + cells);
+            cellMerges = ensureCapacity(cellMerges, cellCount + cells);
+            cellStrings = ensureCapacity(cellStrings, cellCount + cells);
+            rowOffsets = ensureCapacity(rowOffsets, rowCount + rows + 1);
+        }
 
-        @JacksonXmlProperty(localName = "Row", namespace = NS)
-        public List<Row> rows = new ArrayList<>();
+        private static int[] ensureCapacity(int[] array, int required) {
+            return required <= array.length ? array : Arrays.copyOf(array, Math.max(required, array.length * 2));
+        }
     }
 
-    public static class Column {
-        @JacksonXmlProperty(localName = "Width", namespace = NS, isAttribute = true)
-        public String width;
-    }
+    /**
+     * Writes the {@code Column}, {@code Row}, {@code Cell} and {@code Data} elements of a table straight from its arrays
+     */
+    static class TableSerializer extends StdSerializer<Table> {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final QName COLUMN = new QName(NS, "Column");
+        private static final QName WIDTH = new QName(NS, "Width");
+        private static final QName ROW = new QName(NS, "Row");
+        private static final QName CELL = new QName(NS, "Cell");
+        private static final QName STYLE_ID = new QName(NS, "StyleID");
+        private static final QName MERGE_ACROSS = new QName(NS, "MergeAcross");
+        private static final QName DATA = new QName(NS, "Data");
+        private static final QName TYPE = new QName(NS, "Type");
+        private static final QName CONTENT = new QName(NS, "content");
+
+        TableSerializer() {
+            super(Table.class);
+        }
 
-    public static class Row {
-        @JacksonXmlProperty(localName = "Cell", namespace = NS)
-        public List<Cell> cells = new ArrayList<>();
-    }
+        @Override
+        public void serialize(Table table, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            final var xml = (ToXmlGenerator) gen;
+            final var styles = table.workbook.styles.styleList;
+            final var strings = table.workbook.sharedStrings;
+            xml.writeStartObject();
+
+            for (int i = 0; i < table.columnCount; i++) {
+                writeName(xml, COLUMN);
+                xml.writeStartObject();
+                writeAttribute(xml, WIDTH);
+                xml.writeNumber(table.columnWidths[i]);
+                xml.setNextIsAttribute(false);
+                xml.writeEndObject();
+            }
 
-    public static class Cell {
-        @JacksonXmlProperty(localName = "StyleID", namespace = NS, isAttribute = true)
-        public String styleId;
+            for (int row = 0; row < table.rowCount; row++) {
+                writeName(xml, ROW);
+                xml.writeStartObject();
+                for (int i = table.rowOffsets[row]; i < table.rowOffsets[row + 1]; i++) {
+                    writeName(xml, CELL);
+                    xml.writeStartObject();
+                    if (table.cellStyles[i] >= 0) {
+                        writeAttribute(xml, STYLE_ID);
+                        xml.writeString(styles.get(table.cellStyles[i]).id);
+                    }
+                    if (table.cellMerges[i] > 0) {
+                        writeAttribute(xml, MERGE_ACROSS);
+                        xml.writeNumber(table.cellMerges[i]);
+                    }
+                    xml.setNextIsAttribute(false);
+
+                    writeName(xml, DATA);
+                    xml.writeStartObject();
+                    writeAttribute(xml, TYPE);
+                    xml.writeString(DATA_TYPE);
+                    xml.setNextIsAttribute(false);
+                    if (table.cellStrings[i] >= 0) {
+                        xml.setNextIsUnwrapped(true);
+                        writeName(xml, CONTENT);
+                        xml.writeString(strings.get(table.cellStrings[i]));
+                    }
+                    xml.writeEndObject();
 
-        @JacksonXmlProperty(localName = "MergeAcross", namespace = NS, isAttribute = true)
-        public String mergeAcross;
+                    xml.writeEndObject();
+                }
+                xml.writeEndObject();
+            }
 
-        @JacksonXmlProperty(localName = "Data", namespace = NS)
-        public Data data;
+            xml.writeEndObject();
+        }
 
-        public Cell(String styleId, String content) {
-            this(styleId, null, content);
+        private static void writeAttribute(ToXmlGenerator xml, QName name) throws IOException {
+            xml.setNextIsAttribute(true);
+            writeName(xml, name);
         }
 
-        public Cell(String styleId, Integer mergeAcross, String content) {
-            this.styleId = styleId;
-            this.mergeAcross = mergeAcross == null ? null : String.valueOf(mergeAcross);
-            this.data = new Data(content);
+        private static void writeName(ToXmlGenerator xml, QName name) throws IOException {
+            xml.setNextName(name);
+            xml.writeFieldName(name.getLocalPart());
         }
     }
 
-    public static class Data {
-        @JacksonXmlProperty(localName = "Type", namespace = NS, isAttribute = true)
-        public String type = "String";
+    /**
+     * A cell as it is laid out, before it is written or interned into a {@link Table}
+     */
+    public static class Cell {
+        public final String styleId;
+        public final int mergeAcross;
+        public final String content;
 
-        @JacksonXmlText
-        public String content;
+        public Cell(String styleId, String content) {
+            this(styleId, 0, content);
+        }
 
-        public Data(String content) {
+        public Cell(String styleId, int mergeAcross, String content) {
+            this.styleId = styleId;
+            this.mergeAcross = mergeAcross;
             this.content = content;
         }
     }
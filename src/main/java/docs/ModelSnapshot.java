@@ -0,0 +1,234 @@
+package docs;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A compact binary snapshot of the extracted test groups, so that a sheet can be rendered again in another format or
+ * layout without running javadoc. Written by the {@code --snapshot} option of {@link TestSheetDoclet}.
+ * <p>
+ * All numbers are big-endian ints. The file starts with a magic number and the format version, followed by a table of
+ * all distinct strings, each as its length in UTF-8 bytes and the bytes. Then follows the number of groups and a record
+ * per group, prefixed by its length in bytes:
+ * <pre>
+ * group: id, name, test count, tests
+ * test:  id, name, precondition count, preconditions, step count, steps
+ * step:  action, expected result count, expected results
+ * </pre>
+ * Every string is stored as its index in the string table, or -1 for null.
+ */
+public class ModelSnapshot {
+
+    private static final int MAGIC = 0x54534e50; // "TSNP"
+    private static final int VERSION = 1;
+
+    /**
+     * Renders the sheet from a snapshot, like {@link TestSheetDoclet} does for a javadoc run
+     */
+    public static void main(String[] args) {
+        String format = "xml";
+        boolean streaming = false;
+        boolean parallelWrite = false;
+        boolean gzip = false;
+        String outputFile = null;
+        Path snapshot = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--format":
+                    format = args[++i];
+                    if (!TestSheetDoclet.FORMATS.contains(format)) {
+                        throw new IllegalArgumentException("Unsupported format: " + format);
+                    }
+                    break;
+                case "--streaming":
+                    streaming = true;
+                    break;
+                case "--parallel-write":
+                    parallelWrite = true;
+                    break;
+                case "--gzip":
+                    gzip = true;
+                    break;
+                case "--output":
+                    outputFile = args[++i];
+                    break;
+                default:
+                    snapshot = Paths.get(args[i]);
+            }
+        }
+        if (snapshot == null) {
+            System.err.println("Usage: ModelSnapshot [--format <xml|xlsx|json|csv>] [--streaming] [--parallel-write] [--gzip] [--output <file>] <snapshot>");
+            System.exit(2);
+        }
+
+        if (outputFile == null) {
+            outputFile = TestSheetDoclet.outputFileName(format, gzip);
+        }
+        final var outputSink = gzip ? OutputSink.gzip(OutputSink.file()) : OutputSink.file();
+
+        TestSheetDoclet.writeSheet(read(snapshot), format, streaming, parallelWrite, outputSink, outputFile);
+        System.out.println("Wrote acceptance test sheet to: " + Paths.get(outputFile).toAbsolutePath());
+    }
+
+    /**
+     * Writes all groups with their tests in id order. Specifications without a group are left out, as in the sheet.
+     */
+    static void write(TestSheetDoclet.TestGroups testGroups, Path file) {
+        final var strings = new StringTable();
+        final var records = new ByteArrayOutputStream();
+        final var record = new ByteArrayOutputStream();
+        try {
+            final var recordsOut = new DataOutputStream(records);
+            final var recordOut = new DataOutputStream(record);
+            for (TestSheetDoclet.TestGroup group : testGroups.groups()) {
+                record.reset();
+                writeGroup(recordOut, strings, group);
+                recordsOut.writeInt(record.size());
+                record.writeTo(recordsOut);
+            }
+
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(strings.bytes.size());
+                for (byte[] bytes : strings.bytes) {
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+                out.writeInt(testGroups.groups().size());
+                records.writeTo(out);
+            }
+        } catch (IOException err) {
+            throw new RuntimeException(err);
+        }
+    }
+
+    /**
+     * @return The test groups of the snapshot, read through a memory-mapped buffer
+     */
+    static TestSheetDoclet.TestGroups read(Path file) {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException err) {
+            throw new RuntimeException(err);
+        }
+    }
+
+    static TestSheetDoclet.TestGroups read(ByteBuffer buffer) {
+        if (buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a test sheet snapshot");
+        }
+        final int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported snapshot version: " + version);
+        }
+
+        final var strings = new String[buffer.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            final var bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, UTF_8);
+        }
+
+        final var testGroups = new TestSheetDoclet.TestGroups();
+        final int groupCount = buffer.getInt();
+        for (int g = 0; g < groupCount; g++) {
+            final int end = buffer.getInt() + buffer.position();
+            // Groups keep their order, as they are added in the id order they were written in
+            final var typeName = "snapshot." + g;
+            final var group = new TestSheetDoclet.TestGroup();
+            group.id = string(buffer, strings);
+            group.name = string(buffer, strings);
+            testGroups.addTestGroup(typeName, group);
+
+            final int testCount = buffer.getInt();
+            for (int t = 0; t < testCount; t++) {
+                testGroups.addTestSpecification(typeName, readTest(buffer, strings));
+            }
+            buffer.position(end);
+        }
+        return testGroups;
+    }
+
+    private static void writeGroup(DataOutputStream out, StringTable strings, TestSheetDoclet.TestGroup group) throws IOException {
+        out.writeInt(strings.index(group.id));
+        out.writeInt(strings.index(group.name));
+        out.writeInt(group.tests.size());
+        for (TestSheetDoclet.TestSpecification test : group.tests) {
+            out.writeInt(strings.index(test.id));
+            out.writeInt(strings.index(test.name));
+            out.writeInt(test.preconditions.size());
+            for (String precondition : test.preconditions) {
+                out.writeInt(strings.index(precondition));
+            }
+            out.writeInt(test.steps.size());
+            for (TestSheetDoclet.TestStep step : test.steps) {
+                out.writeInt(strings.index(step.action));
+                out.writeInt(step.expectedResults.size());
+                for (String expectedResult : step.expectedResults) {
+                    out.writeInt(strings.index(expectedResult));
+                }
+            }
+        }
+    }
+
+    private static TestSheetDoclet.TestSpecification readTest(ByteBuffer buffer, String[] strings) {
+        final var test = new TestSheetDoclet.TestSpecification();
+        test.id = string(buffer, strings);
+        test.name = string(buffer, strings);
+        final int preconditionCount = buffer.getInt();
+        for (int p = 0; p < preconditionCount; p++) {
+            test.preconditions.add(string(buffer, strings));
+        }
+        final int stepCount = buffer.getInt();
+        for (int s = 0; s < stepCount; s++) {
+            final var step = new TestSheetDoclet.TestStep();
+            step.action = string(buffer, strings);
+            final int expectedResultCount = buffer.getInt();
+            for (int r = 0; r < expectedResultCount; r++) {
+                step.expectedResults.add(string(buffer, strings));
+            }
+            test.steps.add(step);
+        }
+        return test;
+    }
+
+    private static String string(ByteBuffer buffer, String[] strings) {
+        final int index = buffer.getInt();
+        return index < 0 ? null : strings[index];
+    }
+
+    /**
+     * The distinct strings of a snapshot in order of first use, repeated labels such as expected results are stored once
+     */
+    private static class StringTable {
+
+        final Map<String, Integer> indexes = new HashMap<>();
+        final List<byte[]> bytes = new ArrayList<>();
+
+        int index(String text) {
+            if (text == null) {
+                return -1;
+            }
+            return indexes.computeIfAbsent(text, key -> {
+                bytes.add(key.getBytes(UTF_8));
+                return bytes.size() - 1;
+            });
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package docs;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Renders the test groups to several formats in a single pass over the groups and their tests. Every renderer streams
+ * to its own output as the tests are visited, so no format holds more than the test at hand.
+ */
+class MultiFormatWriter {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final TestSheetDoclet.TestGroups testGroups;
+    private final OutputSink outputSink;
+
+    MultiFormatWriter(TestSheetDoclet.TestGroups testGroups, OutputSink outputSink) {
+        this.testGroups = testGroups;
+        this.outputSink = outputSink;
+    }
+
+    /**
+     * @param outputFiles The file to write each format to, xml, json or csv
+     */
+    void write(Map<String, String> outputFiles) {
+        final List<Renderer> renderers = new ArrayList<>();
+        try {
+            open(outputFiles, outputSink, renderers);
+            renderers.forEach(Renderer::start);
+            for (TestSheetDoclet.TestGroup group : testGroups.groups()) {
+                render(renderers, group);
+            }
+            renderers.forEach(Renderer::finish);
+        } finally {
+            close(renderers);
+        }
+    }
+
+    /**
+     * Opens a renderer per format and adds it to the given list, which holds all renderers opened so far if one fails
+     */
+    static void open(Map<String, String> outputFiles, OutputSink outputSink, List<Renderer> renderers) {
+        try {
+            for (Map.Entry<String, String> entry : outputFiles.entrySet()) {
+                renderers.add(renderer(entry.getKey(), outputSink.open(entry.getValue())));
+            }
+        } catch (IOException err) {
+            throw new RuntimeException(err);
+        }
+    }
+
+    /**
+     * Feeds a group and its tests to all renderers
+     */
+    static void render(List<Renderer> renderers, TestSheetDoclet.TestGroup group) {
+        renderers.forEach(renderer -> renderer.startGroup(group));
+        for (TestSheetDoclet.TestSpecification test : group.tests) {
+            renderers.forEach(renderer -> renderer.addTest(test));
+        }
+        renderers.forEach(renderer -> renderer.endGroup(group));
+    }
+
+    private static Renderer renderer(String format, OutputStream out) throws IOException {
+        switch (format) {
+            case "xml":
+                return new JacksonWriter.XmlRenderer(out);
+            case "json":
+                return new JsonRenderer(out);
+            case "csv":
+                return new CsvRenderer(out);
+            default:
+                out.close();
+                throw new IllegalArgumentException("Format cannot be rendered in a single pass: " + format);
+        }
+    }
+
+    static void close(List<Renderer> renderers) {
+        RuntimeException failure = null;
+        for (Renderer renderer : renderers) {
+            try {
+                renderer.close();
+            } catch (IOException err) {
+                if (failure == null) {
+                    failure = new RuntimeException(err);
+                } else {
+                    failure.addSuppressed(err);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Receives the groups and tests in sheet order. Closing a renderer closes its output.
+     */
+    interface Renderer extends Closeable {
+
+        void start();
+
+        void startGroup(TestSheetDoclet.TestGroup group);
+
+        void addTest(TestSheetDoclet.TestSpecification test);
+
+        void endGroup(TestSheetDoclet.TestGroup group);
+
+        /**
+         * Completes the document after the last group
+         */
+        void finish();
+    }
+
+    /**
+     * Writes {@code {"groups": [{"id", "name", "tests": [{"id", "name", "preconditions", "steps": [{"action",
+     * "expectedResults"}]}]}]}}
+     */
+    static class JsonRenderer implements Renderer {
+
+        private final JsonGenerator json;
+
+        JsonRenderer(OutputStream out) throws IOException {
+            this.json = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8);
+        }
+
+        @Override
+        public void start() {
+            try {
+                json.writeStartObject();
+                json.writeArrayFieldStart("groups");
+            } catch (IOException err) {
+                throw new RuntimeException(err);
+            }
+        }
+
+        @Override
+        public void startGroup(TestSheetDoclet.TestGroup group) {
+            try {
+                json.writeStartObject();
+                json.writeStringField("id", group.id);
+                json.writeStringField("name", group.name);
+                json.writeArrayFieldStart("tests");
+            } catch (IOException err) {
+                throw new RuntimeException(err);
+            }
+        }
+
+        @Override
+        public void addTest(TestSheetDoclet.TestSpecification test) {
+            try {
+                json.writeStartObject();
+                json.writeStringField("id", test.id);
+                json.writeStringField("name", test.name);
+                json.writeArrayFieldStart("preconditions");
+                for (String precondition : test.preconditions) {
+                    json.writeString(precondition);
+                }
+                json.writeEndArray();
+                json.writeArrayFieldStart("steps");
+                for (TestSheetDoclet.TestStep step : test.steps) {
+                    json.writeStartObject();
+                    json.writeStringField("action", step.action);
+                    json.writeArrayFieldStart("expectedResults");
+                    for (String expectedResult : step.expectedResults) {
+                        json.writeString(expectedResult);
+                    }
+                    json.writeEndArray();
+                    json.writeEndObject();
+                }
+                json.writeEndArray();
+                json.writeEndObject();
+            } catch (IOException err) {
+                throw new RuntimeException(err);
+            }
+        }
+
+        @Override
+        public void endGroup(TestSheetDoclet.TestGroup group) {
+            try {
+                json.writeEndArray();
+                json.writeEndObject();
+            } catch (IOException err) {
+                throw new RuntimeException(err);
+            }
+        }
+
+        @Override
+        public void finish() {
+            try {
+                json.writeEndArray();
+                json.writeEndObject();
+                json.flush();
+            } catch (IOException err) {
+                throw new RuntimeException(err);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            json.close();
+        }
+    }
+
+    /**
+     * Writes a row per step, for importing into test management tools. Preconditions and expected results are joined
+     * by line breaks within their field, and a test without steps gets a single row. Fields are quoted as in RFC 4180.
+     */
+    static class CsvRenderer implements Renderer {
+
+        private static final String[] HEADER = {
+                "Group id", "Group name", "Test id", "Test name", "Preconditions", "Step", "Action", "Expected results"
+        };
+
+        private final Writer out;
+        private TestSheetDoclet.TestGroup group;
+
+        CsvRenderer(OutputStream out) {
+            this.out = new OutputStreamWriter(out, UTF_8);
+        }
+
+        @Override
+        public void start() {
+            writeRow(HEADER);
+        }
+
+        @Override
+        public void startGroup(TestSheetDoclet.TestGroup group) {
+            this.group = group;
+        }
+
+        @Override
+        public void addTest(TestSheetDoclet.TestSpecification test) {
+            final var preconditions = String.join("\n", test.preconditions);
+            if (test.steps.isEmpty()) {
+                writeRow(group.id, group.name, test.id, test.name, preconditions, "", "", "");
+            }
+            int stepNum = 1;
+            for (TestSheetDoclet.TestStep step : test.steps) {
+                writeRow(group.id, group.name, test.id, test.name, preconditions, String.valueOf(stepNum++),
+                        step.action, String.join("\n", step.expectedResults));
+            }
+        }
+
+        @Override
+        public void endGroup(TestSheetDoclet.TestGroup group) {
+        }
+
+        @Override
+        public void finish() {
+            try {
+                out.flush();
+            } catch (IOException err) {
+                throw new RuntimeException(err);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        private void writeRow(String... fields) {
+            try {
+                for (int i = 0; i < fields.length; i++) {
+                    if (i > 0) {
+                        out.write(',');
+                    }
+                    writeField(fields[i]);
+                }
+                out.write("\r\n");
+            } catch (IOException err) {
+                throw new RuntimeException(err);
+            }
+        }
+
+        private void writeField(String field) throws IOException {
+            if (field == null) {
+                return;
+            }
+            boolean quoted = false;
+            for (int i = 0; i < field.length() && !quoted; i++) {
+                final char c = field.charAt(i);
+                quoted = c == ',' || c == '"' || c == '\r' || c == '\n';
+            }
+            if (!quoted) {
+                out.write(field);
+                return;
+            }
+            out.write('"');
+            out.write(field.replace("\"", "\"\""));
+            out.write('"');
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package docs;
+
+import javax.xml.namespace.NamespaceContext;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Renders independent fragments of a document, such as worksheets, into their own buffers on the common fork-join pool,
+ * and writes them to the document in their original order.
+ * <p>
+ * At most twice the parallelism of the pool are rendered or waiting to be written at any time. The next fragment is only
+ * submitted once the oldest one has been written, so a slow fragment cannot make all later ones pile up in memory.
+ */
+final class OrderedFragments {
+
+    private OrderedFragments() {
+    }
+
+    static <T> void write(OutputStream out, Collection<T> items, Renderer<T> renderer) throws IOException {
+        write(out, items, renderer, 2 * ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * @param maxInFlight The number of fragments that may be rendered or held in a buffer at once
+     */
+    static <T> void write(OutputStream out, Collection<T> items, Renderer<T> renderer, int maxInFlight) throws IOException {
+        final Deque<CompletableFuture<ByteArrayOutputStream>> fragments = new ArrayDeque<>(maxInFlight);
+        for (T item : items) {
+            if (fragments.size() == maxInFlight) {
+                fragments.poll().join().writeTo(out);
+            }
+            fragments.add(CompletableFuture.supplyAsync(() -> {
+                final var buffer = new ByteArrayOutputStream(8192);
+                try {
+                    renderer.render(item, buffer);
+                } catch (Exception err) {
+                    throw new RuntimeException(err);
+                }
+                return buffer;
+            }));
+        }
+
+        // Earlier fragments are written while later ones are still rendering
+        while (!fragments.isEmpty()) {
+            fragments.poll().join().writeTo(out);
+        }
+    }
+
+    /**
+     * The namespaces declared by the root element of the document. A fragment writer given these as its namespace
+     * context does not declare them again.
+     */
+    static class DeclaredNamespaces implements NamespaceContext {
+
+        private final Map<String, String> namespaces;
+
+        /**
+         * @param namespaces The namespace URI of every declared prefix, the default namespace has the empty prefix
+         */
+        DeclaredNamespaces(Map<String, String> namespaces) {
+            this.namespaces = namespaces;
+        }
+
+        @Override
+        public String getNamespaceURI(String prefix) {
+            return namespaces.get(prefix);
+        }
+
+        @Override
+        public String getPrefix(String namespaceURI) {
+            final var prefixes = getPrefixes(namespaceURI);
+            return prefixes.hasNext() ? prefixes.next() : null;
+        }
+
+        @Override
+        public Iterator<String> getPrefixes(String namespaceURI) {
+            return namespaces.entrySet().stream()
+                    .filter(entry -> entry.getValue().equals(namespaceURI))
+                    .map(Map.Entry::getKey)
+                    .iterator();
+        }
+    }
+
+    @FunctionalInterface
+    interface Renderer<T> {
+
+        /**
+         * Writes the fragment of a single item. The fragment is stitched into a document whose root element already
+         * declares the namespaces it uses.
+         */
+        void render(T item, OutputStream out) throws Exception;
+    }
+}
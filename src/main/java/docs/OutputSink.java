@@ -0,0 +1,124 @@
+package docs;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Opens the stream a writer sends its output to. Writers encode their XML as UTF-8 straight into the stream, so the
+ * sink only decides how the bytes are buffered, compressed and written.
+ */
+@FunctionalInterface
+interface OutputSink {
+
+    int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    OutputStream open(String filename) throws IOException;
+
+    /**
+     * @return A sink writing to a file through a heap buffer of {@value #DEFAULT_BUFFER_SIZE} bytes
+     */
+    static OutputSink file() {
+        return filename -> new BufferedOutputStream(new FileOutputStream(filename), DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @return A sink writing to a {@link FileChannel} through a direct buffer of the given size, at least one byte
+     */
+    static OutputSink channel(int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("The output buffer needs at least one byte: " + bufferSize);
+        }
+        return filename -> new ChannelOutputStream(
+                FileChannel.open(Paths.get(filename), CREATE, TRUNCATE_EXISTING, WRITE),
+                ByteBuffer.allocateDirect(bufferSize));
+    }
+
+    /**
+     * @return A sink compressing everything written with gzip before passing it on to the given sink
+     */
+    static OutputSink gzip(OutputSink sink) {
+        return filename -> new GZIPOutputStream(sink.open(filename), DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Collects writes in a direct buffer and hands it to the channel whenever it is full. Writes larger than the buffer
+     * go to the channel directly.
+     */
+    class ChannelOutputStream extends OutputStream {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private boolean closed = false;
+
+        ChannelOutputStream(FileChannel channel, ByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length >= buffer.capacity()) {
+                drain();
+                writeFully(ByteBuffer.wrap(bytes, offset, length));
+                return;
+            }
+            while (length > 0) {
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                final int chunk = Math.min(length, buffer.remaining());
+                buffer.put(bytes, offset, chunk);
+                offset += chunk;
+                length -= chunk;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            drain();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                drain();
+            } finally {
+                channel.close();
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            writeFully(buffer);
+            buffer.clear();
+        }
+
+        private void writeFully(ByteBuffer bytes) throws IOException {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package docs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams test groups to their xml, json or csv sheets on a writer thread while extraction goes on. Finished groups are
+ * handed over through a bounded queue, so extraction waits whenever the writer falls behind by the capacity of the
+ * queue, and no more than that many groups are held in between. Groups are written in the order they are handed over.
+ */
+class PipelinedWriter implements AutoCloseable {
+
+    /**
+     * Marks the end of the groups, compared by identity
+     */
+    private static final TestSheetDoclet.TestGroup END = new TestSheetDoclet.TestGroup();
+
+    /**
+     * How often a waiting extraction checks whether the writer has failed
+     */
+    private static final long POLL_MILLIS = 100;
+
+    private final BlockingQueue<TestSheetDoclet.TestGroup> queue;
+    private final Thread writer;
+    private volatile Throwable failure = null;
+
+    /**
+     * @param outputFiles The file to write each format to
+     * @param capacity    The number of finished groups that may wait for the writer
+     */
+    PipelinedWriter(Map<String, String> outputFiles, OutputSink outputSink, int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(() -> write(outputFiles, outputSink), "test-sheet-writer");
+        writer.start();
+    }
+
+    private void write(Map<String, String> outputFiles, OutputSink outputSink) {
+        final List<MultiFormatWriter.Renderer> renderers = new ArrayList<>();
+        try {
+            MultiFormatWriter.open(outputFiles, outputSink, renderers);
+            renderers.forEach(MultiFormatWriter.Renderer::start);
+            for (var group = queue.take(); group != END; group = queue.take()) {
+                MultiFormatWriter.render(renderers, group);
+            }
+            renderers.forEach(MultiFormatWriter.Renderer::finish);
+        } catch (Throwable err) {
+            failure = err;
+        } finally {
+            try {
+                MultiFormatWriter.close(renderers);
+            } catch (RuntimeException err) {
+                if (failure == null) {
+                    failure = err;
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands a finished group to the writer, waiting while the queue is full
+     */
+    void put(TestSheetDoclet.TestGroup group) {
+        try {
+            while (!queue.offer(group, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+        } catch (InterruptedException err) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(err);
+        }
+    }
+
+    /**
+     * Waits until all groups handed over are written
+     */
+    void finish() {
+        put(END);
+        try {
+            writer.join();
+        } catch (InterruptedException err) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(err);
+        }
+        checkFailure();
+    }
+
+    /**
+     * Stops the writer if extraction failed before {@link #finish()}, leaving the sheets incomplete
+     */
+    @Override
+    public void close() {
+        if (writer.isAlive()) {
+            writer.interrupt();
+            try {
+                writer.join();
+            } catch (InterruptedException err) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new RuntimeException("Writing the sheet failed", failure);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package docs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Splits the test groups into shards of a fixed number of groups, writes every shard to its own sheet in parallel,
+ * and lists the sheets and their group ids in a JSON manifest, so that consumers can load only the groups they need.
+ */
+class ShardedWriter {
+
+    private final TestSheetDoclet.TestGroups testGroups;
+    private final int groupsPerShard;
+
+    ShardedWriter(TestSheetDoclet.TestGroups testGroups, int groupsPerShard) {
+        this.testGroups = testGroups;
+        this.groupsPerShard = groupsPerShard;
+    }
+
+    /**
+     * @param sheetWriter  Writes a single shard
+     * @param fileName     The file name of a shard, given a suffix with its zero-padded number starting at 1
+     * @param manifestFile The file to write the manifest to
+     * @return The files of all shards, in id order of their groups
+     */
+    List<String> write(SheetWriter sheetWriter, Function<String, String> fileName, String manifestFile) {
+        final var shards = testGroups.shards(groupsPerShard);
+        final var digits = String.valueOf(shards.size()).length();
+        final List<String> files = new ArrayList<>();
+        for (int i = 1; i <= shards.size(); i++) {
+            files.add(fileName.apply(String.format("-%0" + digits + "d", i)));
+        }
+
+        IntStream.range(0, shards.size()).parallel().forEach(i -> sheetWriter.write(shards.get(i), files.get(i)));
+
+        final List<Map<String, Object>> manifest = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            final Map<String, Object> shard = new LinkedHashMap<>();
+            shard.put("file", files.get(i));
+            shard.put("groups", shards.get(i).groups().stream().map(group -> group.id).collect(Collectors.toList()));
+            manifest.add(shard);
+        }
+        try {
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT)
+                    .writeValue(new File(manifestFile), Map.of("shards", manifest));
+        } catch (IOException err) {
+            throw new RuntimeException(err);
+        }
+        return files;
+    }
+
+    @FunctionalInterface
+    interface SheetWriter {
+
+        void write(TestSheetDoclet.TestGroups shard, String filename);
+    }
+}
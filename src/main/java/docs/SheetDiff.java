@@ -0,0 +1,264 @@
+package docs;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compares the tests of a run with the content hashes stored in a manifest by the previous run, so that only the tests
+ * added, changed or removed since need to be written. The manifest is replaced by the hashes of the current run.
+ */
+class SheetDiff {
+
+    /**
+     * Part of every hash, bump whenever the content that is hashed changes
+     */
+    private static final String HASH_VERSION = "1";
+
+    private final Path manifestFile;
+    private final ObjectMapper mapper;
+
+    SheetDiff(Path manifestFile) {
+        this.manifestFile = manifestFile;
+        this.mapper = new ObjectMapper()
+                .setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE)
+                .setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY)
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                .enable(SerializationFeature.INDENT_OUTPUT);
+    }
+
+    /**
+     * @return The changes of the given test groups since the stored manifest, all tests are added if there is none
+     */
+    Changes compare(TestSheetDoclet.TestGroups testGroups) {
+        final var manifest = manifest(testGroups);
+        final var changes = new Changes(manifest);
+
+        final Map<String, GroupHash> previousGroups = byKey(load().groups, group -> group.id);
+        final Map<String, Integer> occurrences = new HashMap<>();
+        int index = 0;
+        for (TestSheetDoclet.TestGroup group : testGroups.groups()) {
+            final var groupHash = manifest.groups.get(index++);
+            final var previous = previousGroups.remove(key(groupHash.id, occurrences));
+            if (previous != null && previous.hash.equals(groupHash.hash)) {
+                continue;
+            }
+            changes.addGroup(group, groupHash, previous);
+        }
+        // Groups that are gone take all of their tests along
+        previousGroups.values().forEach(previous -> changes.addGroup(null, null, previous));
+
+        return changes;
+    }
+
+    /**
+     * Replaces the stored manifest with the hashes of the compared run, once its changes are written
+     */
+    void store(Changes changes) {
+        try {
+            final var parent = manifestFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            final var temporary = Files.createTempFile(parent, manifestFile.getFileName().toString(), ".tmp");
+            mapper.writeValue(temporary.toFile(), changes.manifest);
+            Files.move(temporary, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException err) {
+            throw new RuntimeException(err);
+        }
+    }
+
+    private Manifest load() {
+        if (!Files.isRegularFile(manifestFile)) {
+            return new Manifest();
+        }
+        try {
+            return mapper.readValue(manifestFile.toFile(), Manifest.class);
+        } catch (IOException err) {
+            throw new RuntimeException(err);
+        }
+    }
+
+    static Manifest manifest(TestSheetDoclet.TestGroups testGroups) {
+        final var manifest = new Manifest();
+        for (TestSheetDoclet.TestGroup group : testGroups.groups()) {
+            final var groupHash = new GroupHash();
+            groupHash.id = group.id;
+            groupHash.name = group.name;
+
+            final var digest = ExtractionCache.newDigest();
+            update(digest, HASH_VERSION);
+            update(digest, group.id);
+            update(digest, group.name);
+            for (TestSheetDoclet.TestSpecification test : group.tests) {
+                final var testHash = new TestHash();
+                testHash.id = test.id;
+                testHash.name = test.name;
+                testHash.hash = hash(test);
+                groupHash.tests.add(testHash);
+                update(digest, testHash.hash);
+            }
+            groupHash.hash = ExtractionCache.toHex(digest.digest());
+            manifest.groups.add(groupHash);
+        }
+        return manifest;
+    }
+
+    private static String hash(TestSheetDoclet.TestSpecification test) {
+        final var digest = ExtractionCache.newDigest();
+        update(digest, HASH_VERSION);
+        update(digest, test.id);
+        update(digest, test.name);
+        update(digest, test.preconditions.size());
+        test.preconditions.forEach(precondition -> update(digest, precondition));
+        update(digest, test.steps.size());
+        for (TestSheetDoclet.TestStep step : test.steps) {
+            update(digest, step.action);
+            update(digest, step.expectedResults.size());
+            step.expectedResults.forEach(expectedResult -> update(digest, expectedResult));
+        }
+        return ExtractionCache.toHex(digest.digest());
+    }
+
+    /**
+     * Length-prefixes every value, so that moving text from one field to the next changes the hash
+     */
+    private static void update(MessageDigest digest, String value) {
+        if (value == null) {
+            update(digest, -1);
+            return;
+        }
+        final var bytes = value.getBytes(UTF_8);
+        update(digest, bytes.length);
+        digest.update(bytes);
+    }
+
+    private static void update(MessageDigest digest, int value) {
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(value).flip());
+    }
+
+    /**
+     * Groups and tests are matched by id. Repeated ids are matched in the order they occur.
+     */
+    private static <T> Map<String, T> byKey(List<T> values, Function<T, String> id) {
+        final Map<String, T> byKey = new LinkedHashMap<>();
+        final Map<String, Integer> occurrences = new HashMap<>();
+        values.forEach(value -> byKey.put(key(id.apply(value), occurrences), value));
+        return byKey;
+    }
+
+    private static String key(String id, Map<String, Integer> occurrences) {
+        final var safeId = Objects.toString(id, "");
+        return safeId + "#" + occurrences.merge(safeId, 1, Integer::sum);
+    }
+
+    /**
+     * The groups that changed, holding only the tests that were added, changed or removed. The name of every test is
+     * prefixed by the kind of change, and removed tests keep nothing but their id and name.
+     */
+    static class Changes {
+
+        final TestSheetDoclet.TestGroups testGroups = new TestSheetDoclet.TestGroups();
+        final Manifest manifest;
+        int added = 0;
+        int changed = 0;
+        int removed = 0;
+        private int groups = 0;
+
+        private Changes(Manifest manifest) {
+            this.manifest = manifest;
+        }
+
+        boolean isEmpty() {
+            return groups == 0;
+        }
+
+        /**
+         * @param group    The group of the current run, or null if it was removed
+         * @param current  The hashes of the current group, or null if it was removed
+         * @param previous The hashes of the previous run, or null if the group was added
+         */
+        private void addGroup(TestSheetDoclet.TestGroup group, GroupHash current, GroupHash previous) {
+            final var typeName = "changes." + groups++;
+            final var changedGroup = new TestSheetDoclet.TestGroup();
+            changedGroup.id = group != null ? group.id : previous.id;
+            changedGroup.name = group != null ? group.name : previous.name;
+            testGroups.addTestGroup(typeName, changedGroup);
+
+            final Map<String, TestHash> previousTests = byKey(previous != null ? previous.tests : List.of(), test -> test.id);
+            if (group != null) {
+                final Map<String, Integer> occurrences = new HashMap<>();
+                for (int i = 0; i < group.tests.size(); i++) {
+                    final var test = group.tests.get(i);
+                    final var previousTest = previousTests.remove(key(test.id, occurrences));
+                    if (previousTest == null) {
+                        added++;
+                        testGroups.addTestSpecification(typeName, copy(test, "Added"));
+                    } else if (!previousTest.hash.equals(current.tests.get(i).hash)) {
+                        changed++;
+                        testGroups.addTestSpecification(typeName, copy(test, "Changed"));
+                    }
+                }
+            }
+            for (TestHash previousTest : previousTests.values()) {
+                removed++;
+                final var test = new TestSheetDoclet.TestSpecification();
+                test.id = previousTest.id;
+                test.name = prefixed("Removed", previousTest.name);
+                testGroups.addTestSpecification(typeName, test);
+            }
+        }
+
+        private static String prefixed(String change, String name) {
+            return name == null ? change : change + ": " + name;
+        }
+
+        private static TestSheetDoclet.TestSpecification copy(TestSheetDoclet.TestSpecification test, String change) {
+            final var copy = new TestSheetDoclet.TestSpecification();
+            copy.id = test.id;
+            copy.name = prefixed(change, test.name);
+            copy.preconditions = test.preconditions;
+            copy.steps = test.steps;
+            return copy;
+        }
+    }
+
+    /**
+     * The content hashes of all groups and their tests, in id order
+     */
+    static class Manifest {
+
+        List<GroupHash> groups = new ArrayList<>();
+    }
+
+    static class GroupHash {
+
+        String id;
+        String name;
+        String hash;
+        List<TestHash> tests = new ArrayList<>();
+    }
+
+    static class TestHash {
+
+        String id;
+        String name;
+        String hash;
+    }
+}
@@ -0,0 +1,578 @@
+package docs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Extracts the test groups and specifications straight from {@code .java} files, without starting javadoc. A lightweight
+ * scanner finds the doc comments of types, methods and constructors and reads their block tags. The files are
+ * memory-mapped and scanned in parallel.
+ * <p>
+ * Tag content is taken as plain text. Inline tags, HTML elements and entities are kept as written, while javadoc splits
+ * them from the surrounding text and the doclet joins the parts with an extra space at every boundary. The sheets of
+ * both extractors only match for tags without them.
+ */
+public class SourceScanner {
+
+    /**
+     * Scans the given source roots and writes the sheet, like {@link TestSheetDoclet} does for a javadoc run
+     */
+    public static void main(String[] args) throws IOException {
+        String format = "xml";
+        boolean streaming = false;
+        boolean parallelWrite = false;
+        boolean gzip = false;
+        boolean watch = false;
+        String outputFile = null;
+        final List<Path> roots = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--format":
+                    format = args[++i];
+                    if (!TestSheetDoclet.FORMATS.contains(format)) {
+                        throw new IllegalArgumentException("Unsupported format: " + format);
+                    }
+                    break;
+                case "--streaming":
+                    streaming = true;
+                    break;
+                case "--parallel-write":
+                    parallelWrite = true;
+                    break;
+                case "--gzip":
+                    gzip = true;
+                    break;
+                case "--watch":
+                    watch = true;
+                    break;
+                case "--output":
+                    outputFile = args[++i];
+                    break;
+                default:
+                    roots.add(Paths.get(args[i]));
+            }
+        }
+        if (roots.isEmpty()) {
+            System.err.println("Usage: SourceScanner [--format <xml|xlsx|json|csv>] [--streaming] [--parallel-write] [--gzip] [--watch] [--output <file>] <source root>...");
+            System.exit(2);
+        }
+
+        if (outputFile == null) {
+            outputFile = TestSheetDoclet.outputFileName(format, gzip);
+        }
+        final var outputSink = gzip ? OutputSink.gzip(OutputSink.file()) : OutputSink.file();
+
+        if (!watch) {
+            writeSheet(scan(roots), format, streaming, parallelWrite, outputSink, outputFile);
+            return;
+        }
+
+        try (var watcher = new SourceWatcher(roots)) {
+            System.out.println("Watching " + roots + " for changes, stop with Ctrl+C");
+            while (true) {
+                final long start = System.nanoTime();
+                writeSheet(watcher.testGroups(), format, streaming, parallelWrite, outputSink, outputFile);
+                System.out.println(String.format("Regenerated in %d ms", (System.nanoTime() - start) / 1_000_000));
+                watcher.awaitChanges();
+            }
+        } catch (InterruptedException err) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void writeSheet(TestSheetDoclet.TestGroups testGroups, String format, boolean streaming, boolean parallelWrite,
+                                   OutputSink outputSink, String outputFile) {
+        testGroups.orphans().forEach((typeName, tests) -> System.err.println(
+                String.format("warning: %d test specification(s) in %s are skipped, the type has no test group", tests.size(), typeName)));
+        TestSheetDoclet.writeSheet(testGroups, format, streaming, parallelWrite, outputSink, outputFile);
+        System.out.println("Wrote acceptance test sheet to: " + Paths.get(outputFile).toAbsolutePath());
+    }
+
+    /**
+     * @return The test groups of all {@code .java} files below the given roots. The files are visited in path order,
+     * so the result does not depend on the order in which they finish scanning.
+     */
+    static TestSheetDoclet.TestGroups scan(List<Path> roots) throws IOException {
+        final List<List<ScannedDocs>> scanned = javaFiles(roots).parallelStream()
+                .map(SourceScanner::scanFile)
+                .collect(Collectors.toList());
+        return toTestGroups(scanned);
+    }
+
+    /**
+     * @return All {@code .java} files below the given roots, in path order
+     */
+    static List<Path> javaFiles(List<Path> roots) throws IOException {
+        final List<Path> files = new ArrayList<>();
+        for (Path root : roots) {
+            try (Stream<Path> paths = Files.walk(root)) {
+                paths.filter(path -> isJavaFile(path) && Files.isRegularFile(path)).forEach(files::add);
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+
+    static boolean isJavaFile(Path path) {
+        return path.toString().endsWith(".java");
+    }
+
+    /**
+     * Adds the docs of all files to new test groups, in the given order
+     */
+    static TestSheetDoclet.TestGroups toTestGroups(Collection<List<ScannedDocs>> scanned) {
+        final var testGroups = new TestSheetDoclet.TestGroups();
+        for (List<ScannedDocs> fileDocs : scanned) {
+            for (ScannedDocs docs : fileDocs) {
+                docs.addTo(testGroups);
+            }
+        }
+        return testGroups;
+    }
+
+    static List<ScannedDocs> scanFile(Path file) {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return scan(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException err) {
+            throw new RuntimeException(err);
+        }
+    }
+
+    /**
+     * @return The parsed docs of every documented type, method and constructor in the given source, in source order
+     */
+    static List<ScannedDocs> scan(ByteBuffer source) {
+        final var docs = new FileScanner(source).scan();
+        docs.forEach(ScannedDocs::parse);
+        return docs;
+    }
+
+    /**
+     * Splits the text of a doc comment into its block tags, as pairs of tag name and content. Like javadoc, leading
+     * whitespace and asterisks are stripped from every line, and a block tag starts with an {@code @} at the start of a line.
+     */
+    static List<String[]> blockTags(String comment) {
+        final List<String[]> tags = new ArrayList<>();
+        String tagName = null;
+        final var content = new StringBuilder();
+
+        final var lines = comment.split("\r?\n", -1);
+        for (int i = 0; i < lines.length; i++) {
+            var line = lines[i];
+            if (i > 0) {
+                line = line.stripLeading();
+                int stars = 0;
+                while (stars < line.length() && line.charAt(stars) == '*') {
+                    stars++;
+                }
+                line = line.substring(stars);
+            }
+
+            final var text = line.stripLeading();
+            if (text.length() > 1 && text.charAt(0) == '@' && Character.isJavaIdentifierStart(text.charAt(1))) {
+                if (tagName != null) {
+                    tags.add(new String[]{tagName, content.toString().strip()});
+                }
+                int nameEnd = 1;
+                while (nameEnd < text.length() && !Character.isWhitespace(text.charAt(nameEnd))) {
+                    nameEnd++;
+                }
+                tagName = text.substring(1, nameEnd);
+                content.setLength(0);
+                content.append(text, nameEnd, text.length());
+            } else if (tagName != null) {
+                content.append('\n').append(line);
+            }
+        }
+        if (tagName != null) {
+            tags.add(new String[]{tagName, content.toString().strip()});
+        }
+        return tags;
+    }
+
+    /**
+     * The block tags of a documented type or executable, and the test group or specification parsed from them
+     */
+    static class ScannedDocs {
+
+        final boolean type;
+        final String typeName;
+        final List<String[]> tags;
+        TestSheetDoclet.TestGroup testGroup;
+        TestSheetDoclet.TestSpecification testSpecification;
+
+        ScannedDocs(boolean type, String typeName, List<String[]> tags) {
+            this.type = type;
+            this.typeName = typeName;
+            this.tags = tags;
+        }
+
+        void parse() {
+            if (type) {
+                final var group = new TestSheetDoclet.TestGroup();
+                tags.forEach(tag -> TestSheetDoclet.CLASS_TAGS.apply(group, tag[0], tag[1]));
+                testGroup = group.isComplete() ? group : null;
+            } else {
+                final var test = new TestSheetDoclet.TestSpecification();
+                tags.forEach(tag -> TestSheetDoclet.METHOD_TAGS.apply(test, tag[0], tag[1]));
+                testSpecification = test.isComplete() ? test : null;
+            }
+        }
+
+        void addTo(TestSheetDoclet.TestGroups testGroups) {
+            if (testGroup != null) {
+                // The docs of unchanged files are added again on every rebuild in watch mode
+                testGroup.clearTests();
+                testGroups.addTestGroup(typeName, testGroup);
+            }
+            if (testSpecification != null) {
+                testGroups.addTestSpecification(typeName, testSpecification);
+            }
+        }
+    }
+
+    /**
+     * Single pass over the bytes of one source file. It only tracks what is needed to attribute doc comments: the
+     * package, the nesting of type bodies by brace depth, and whether a documented member turns out to be a type,
+     * an executable or something else. Comments and literals are skipped, so braces inside them are not counted.
+     */
+    private static class FileScanner {
+
+        private final ByteBuffer source;
+        private final int end;
+        private final List<ScannedDocs> docs = new ArrayList<>();
+        private final Deque<TypeScope> scopes = new ArrayDeque<>();
+        private int pos;
+        private int depth = 0;
+        private boolean afterDot = false;
+        private String packageName = null;
+        private String pendingDoc = null;
+
+        // A type declaration whose body has not been opened yet
+        private boolean expectTypeName = false;
+        private boolean enumDeclaration = false;
+        private String typeDoc = null;
+        private String typeName = null;
+
+        FileScanner(ByteBuffer source) {
+            this.source = source;
+            this.pos = source.position();
+            this.end = source.limit();
+        }
+
+        List<ScannedDocs> scan() {
+            while (pos < end) {
+                final byte c = source.get(pos);
+                if (c == '/' && peek(1) == '*' && peek(2) == '*' && peek(3) != '/') {
+                    pendingDoc = readDocComment();
+                } else if (skipCommentOrLiteral()) {
+                    continue;
+                } else if (isIdentifierStart(c)) {
+                    word(readIdentifier());
+                } else if (c == '@') {
+                    annotation();
+                } else {
+                    symbol(c);
+                }
+            }
+            return docs;
+        }
+
+        private void word(String word) {
+            final boolean dotted = afterDot;
+            afterDot = false;
+            if (expectTypeName) {
+                typeName = word;
+                expectTypeName = false;
+            } else if (!dotted && atMemberLevel()) {
+                switch (word) {
+                    case "package":
+                        if (scopes.isEmpty()) {
+                            packageName = readQualifiedName();
+                        }
+                        break;
+                    case "class":
+                    case "interface":
+                    case "enum":
+                    case "record":
+                        startType("enum".equals(word));
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        private void annotation() {
+            pos++;
+            skipWhitespace();
+            if (pos >= end || !isIdentifierStart(source.get(pos))) {
+                return;
+            }
+            final var name = readIdentifier();
+            if ("interface".equals(name)) {
+                if (atMemberLevel()) {
+                    startType(false);
+                }
+                return;
+            }
+            // Qualified annotation names and arguments, which must not be taken for a method
+            while (true) {
+                skipWhitespace();
+                if (peek(0) == '.') {
+                    pos++;
+                    skipWhitespace();
+                    if (pos < end && isIdentifierStart(source.get(pos))) {
+                        readIdentifier();
+                    }
+                } else if (peek(0) == '(') {
+                    skipParentheses();
+                    return;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private void symbol(byte c) {
+            afterDot = c == '.';
+            if (expectTypeName) {
+                // The keyword was used as a name, as in a method called record
+                expectTypeName = false;
+                pendingDoc = typeDoc;
+                typeDoc = null;
+            }
+            switch (c) {
+                case '{':
+                    depth++;
+                    if (typeName != null) {
+                        final var scope = new TypeScope(qualify(typeName), depth, enumDeclaration);
+                        scopes.push(scope);
+                        if (typeDoc != null) {
+                            addDocs(true, scope.name, typeDoc);
+                        }
+                        typeName = null;
+                        typeDoc = null;
+                    }
+                    pendingDoc = null;
+                    break;
+                case '}':
+                    if (!scopes.isEmpty() && scopes.peek().bodyDepth == depth) {
+                        scopes.pop();
+                    }
+                    depth--;
+                    pendingDoc = null;
+                    break;
+                case '(':
+                    if (typeName == null && pendingDoc != null && !scopes.isEmpty() && atMemberLevel() && !scopes.peek().inEnumConstants) {
+                        addDocs(false, scopes.peek().name, pendingDoc);
+                    }
+                    pendingDoc = null;
+                    // Parameters, record components and constructor arguments
+                    skipParentheses();
+                    return;
+                case ';':
+                    if (!scopes.isEmpty() && atMemberLevel()) {
+                        scopes.peek().inEnumConstants = false;
+                    }
+                    pendingDoc = null;
+                    break;
+                case '=':
+                    pendingDoc = null;
+                    break;
+                case ',':
+                    if (!scopes.isEmpty() && atMemberLevel() && scopes.peek().inEnumConstants) {
+                        pendingDoc = null;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            pos++;
+        }
+
+        private void startType(boolean isEnum) {
+            expectTypeName = true;
+            enumDeclaration = isEnum;
+            typeDoc = pendingDoc;
+            pendingDoc = null;
+        }
+
+        private void addDocs(boolean type, String typeName, String comment) {
+            final var tags = blockTags(comment);
+            if (!tags.isEmpty()) {
+                docs.add(new ScannedDocs(type, typeName, tags));
+            }
+        }
+
+        private boolean atMemberLevel() {
+            return depth == (scopes.isEmpty() ? 0 : scopes.peek().bodyDepth);
+        }
+
+        private String qualify(String simpleName) {
+            if (!scopes.isEmpty()) {
+                return scopes.peek().name + "." + simpleName;
+            }
+            return packageName == null ? simpleName : packageName + "." + simpleName;
+        }
+
+        private String readQualifiedName() {
+            final var name = new StringBuilder();
+            while (pos < end) {
+                final byte c = source.get(pos);
+                if (skipCommentOrLiteral()) {
+                    continue;
+                }
+                if (isIdentifierStart(c)) {
+                    name.append(readIdentifier());
+                } else if (c == '.') {
+                    name.append('.');
+                    pos++;
+                } else if (c == ';') {
+                    pos++;
+                    break;
+                } else {
+                    pos++;
+                }
+            }
+            return name.toString();
+        }
+
+        private String readIdentifier() {
+            final int start = pos;
+            while (pos < end && isIdentifierPart(source.get(pos))) {
+                pos++;
+            }
+            return decode(start, pos);
+        }
+
+        private String readDocComment() {
+            final int start = pos + 3;
+            pos = start;
+            while (pos < end && !(source.get(pos) == '*' && peek(1) == '/')) {
+                pos++;
+            }
+            final var comment = decode(start, Math.min(pos, end));
+            pos = Math.min(pos + 2, end);
+            return comment;
+        }
+
+        private void skipParentheses() {
+            int open = 0;
+            while (pos < end) {
+                final byte c = source.get(pos);
+                if (skipCommentOrLiteral()) {
+                    continue;
+                }
+                pos++;
+                if (c == '(') {
+                    open++;
+                } else if (c == ')' && --open == 0) {
+                    return;
+                }
+            }
+        }
+
+        private void skipWhitespace() {
+            while (pos < end) {
+                final byte c = source.get(pos);
+                final boolean comment = c == '/' && (peek(1) == '/' || peek(1) == '*');
+                if (!comment && !isWhitespace(c)) {
+                    return;
+                }
+                skipCommentOrLiteral();
+            }
+        }
+
+        /**
+         * Skips whitespace, a comment or a string or character literal at the current position
+         *
+         * @return Whether anything was skipped
+         */
+        private boolean skipCommentOrLiteral() {
+            final byte c = source.get(pos);
+            if (isWhitespace(c)) {
+                pos++;
+            } else if (c == '/' && peek(1) == '/') {
+                while (pos < end && source.get(pos) != '\n') {
+                    pos++;
+                }
+            } else if (c == '/' && peek(1) == '*') {
+                pos += 2;
+                while (pos < end && !(source.get(pos) == '*' && peek(1) == '/')) {
+                    pos++;
+                }
+                pos = Math.min(pos + 2, end);
+            } else if (c == '"' && peek(1) == '"' && peek(2) == '"') {
+                pos += 3;
+                while (pos < end && !(source.get(pos) == '"' && peek(1) == '"' && peek(2) == '"')) {
+                    pos += source.get(pos) == '\\' ? 2 : 1;
+                }
+                pos = Math.min(pos + 3, end);
+            } else if (c == '"' || c == '\'') {
+                pos++;
+                while (pos < end && source.get(pos) != c && source.get(pos) != '\n') {
+                    pos += source.get(pos) == '\\' ? 2 : 1;
+                }
+                pos = Math.min(pos + 1, end);
+            } else {
+                return false;
+            }
+            return true;
+        }
+
+        private byte peek(int offset) {
+            final int index = pos + offset;
+            return index < end ? source.get(index) : 0;
+        }
+
+        private String decode(int start, int end) {
+            final var bytes = new byte[end - start];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = source.get(start + i);
+            }
+            return new String(bytes, UTF_8);
+        }
+
+        private static boolean isWhitespace(byte c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+        }
+
+        private static boolean isIdentifierStart(byte c) {
+            // Every byte of a multi-byte UTF-8 sequence is negative
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '$' || c < 0;
+        }
+
+        private static boolean isIdentifierPart(byte c) {
+            return isIdentifierStart(c) || (c >= '0' && c <= '9');
+        }
+    }
+
+    private static class TypeScope {
+
+        final String name;
+        final int bodyDepth;
+        boolean inEnumConstants;
+
+        TypeScope(String name, int bodyDepth, boolean isEnum) {
+            this.name = name;
+            this.bodyDepth = bodyDepth;
+            this.inEnumConstants = isEnum;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package docs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Keeps the docs scanned from every source file below a set of roots in memory, and rescans only the files that
+ * changed since. Used by the watch mode of {@link SourceScanner}.
+ */
+class SourceWatcher implements Closeable {
+
+    /**
+     * How long to wait for more events after the first one, as saving a file usually raises several
+     */
+    private static final long SETTLE_MILLIS = 50;
+
+    private final List<Path> roots;
+    private final WatchService watchService;
+    private final Map<Path, List<SourceScanner.ScannedDocs>> scanned = new TreeMap<>();
+
+    SourceWatcher(List<Path> roots) throws IOException {
+        this.roots = roots;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        for (Path root : roots) {
+            registerAll(root);
+        }
+        rescanAll();
+    }
+
+    /**
+     * @return New test groups holding the docs of all files as last scanned
+     */
+    TestSheetDoclet.TestGroups testGroups() {
+        return SourceScanner.toTestGroups(scanned.values());
+    }
+
+    /**
+     * Blocks until at least one source file was created, modified or deleted, and rescans the changed files
+     */
+    void awaitChanges() throws InterruptedException, IOException {
+        while (true) {
+            final Set<Path> changed = new HashSet<>();
+            boolean overflow = false;
+
+            var key = watchService.take();
+            while (key != null) {
+                final var directory = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        overflow = true;
+                        continue;
+                    }
+                    final var path = directory.resolve((Path) event.context());
+                    if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                        // Files created in a new directory before it is registered are picked up by the walk
+                        registerAll(path);
+                        SourceScanner.javaFiles(List.of(path)).forEach(changed::add);
+                    } else if (event.kind() == ENTRY_DELETE) {
+                        // A deleted directory takes all of its files along
+                        scanned.keySet().stream().filter(file -> file.startsWith(path)).forEach(changed::add);
+                    }
+                    if (SourceScanner.isJavaFile(path)) {
+                        changed.add(path);
+                    }
+                }
+                key.reset();
+                key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+            }
+
+            if (overflow) {
+                rescanAll();
+                return;
+            }
+            if (!changed.isEmpty()) {
+                rescan(changed);
+                return;
+            }
+        }
+    }
+
+    private void rescanAll() throws IOException {
+        scanned.clear();
+        rescan(SourceScanner.javaFiles(roots));
+    }
+
+    private void rescan(Collection<Path> files) {
+        final Map<Path, List<SourceScanner.ScannedDocs>> rescanned = new ConcurrentHashMap<>();
+        files.parallelStream()
+                .filter(Files::isRegularFile)
+                .forEach(file -> rescanned.put(file, SourceScanner.scanFile(file)));
+
+        // Files that are gone are dropped along with their docs
+        scanned.keySet().removeAll(files);
+        scanned.putAll(rescanned);
+    }
+
+    private void registerAll(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path directory : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator) {
+                directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
@@ -0,0 +1,109 @@
+package docs;
+
+import com.sun.source.doctree.DocTree;
+import com.sun.source.doctree.TextTree;
+import com.sun.source.doctree.UnknownBlockTagTree;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.sun.source.doctree.DocTree.Kind.TEXT;
+import static com.sun.source.doctree.DocTree.Kind.UNKNOWN_BLOCK_TAG;
+
+/**
+ * Registry of handlers for custom block tags such as {@code @id} or {@code @step}. Parsing a doc comment looks up the
+ * handler of every custom block tag and passes it the tag content, normalised to a single line.
+ *
+ * @param <T> The model object the tags are parsed into
+ */
+class TagHandlers<T> {
+
+    /**
+     * Normalisation buffer per parsing thread, reused for every tag
+     */
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private final Map<String, TagHandler<T>> handlers = new HashMap<>();
+
+    /**
+     * Registers the handler for a tag, replacing any handler registered before
+     *
+     * @param tagName The tag name without the leading {@code @}
+     */
+    TagHandlers<T> register(String tagName, TagHandler<T> handler) {
+        handlers.put(tagName, handler);
+        return this;
+    }
+
+    /**
+     * Passes the content of all custom block tags with a registered handler to the handler, in order
+     */
+    void apply(T target, List<? extends DocTree> tags) {
+        for (DocTree tag : tags) {
+            if (tag.getKind() != UNKNOWN_BLOCK_TAG) {
+                continue;
+            }
+            final var unknown = (UnknownBlockTagTree) tag;
+            final var handler = handlers.get(unknown.getTagName());
+            if (handler != null) {
+                handler.handle(target, normalise(unknown.getContent()));
+            }
+        }
+    }
+
+    /**
+     * Passes the content of a single tag to its handler, if one is registered. Used for tags that were not read
+     * through javadoc, the content must be plain text.
+     */
+    void apply(T target, String tagName, String content) {
+        final var handler = handlers.get(tagName);
+        if (handler != null) {
+            handler.handle(target, normalise(content));
+        }
+    }
+
+    /**
+     * Joins the content nodes with a single space and drops all line breaks, in one pass over the nodes
+     */
+    static String normalise(List<? extends DocTree> content) {
+        final var buffer = BUFFER.get();
+        buffer.setLength(0);
+        for (int i = 0; i < content.size(); i++) {
+            if (i > 0) {
+                buffer.append(' ');
+            }
+            final DocTree node = content.get(i);
+            appendWithoutLineBreaks(buffer, node.getKind() == TEXT ? ((TextTree) node).getBody() : node.toString());
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Drops all line breaks of plain text tag content
+     */
+    static String normalise(String content) {
+        if (content.indexOf('\n') < 0) {
+            return content;
+        }
+        final var buffer = BUFFER.get();
+        buffer.setLength(0);
+        appendWithoutLineBreaks(buffer, content);
+        return buffer.toString();
+    }
+
+    private static void appendWithoutLineBreaks(StringBuilder buffer, String text) {
+        int start = 0;
+        for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', start)) {
+            buffer.append(text, start, i);
+            start = i + 1;
+        }
+        buffer.append(text, start, text.length());
+    }
+
+    @FunctionalInterface
+    interface TagHandler<T> {
+
+        void handle(T target, String content);
+    }
+}
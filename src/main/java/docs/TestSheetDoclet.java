@@ -2,7 +2,6 @@ package docs;
 
 import com.sun.source.doctree.DocCommentTree;
 import com.sun.source.doctree.DocTree;
-import com.sun.source.doctree.UnknownBlockTagTree;
 import com.sun.source.util.DocTrees;
 import jdk.javadoc.doclet.Doclet;
 import jdk.javadoc.doclet.DocletEnvironment;
@@ -10,20 +9,85 @@ import jdk.javadoc.doclet.Reporter;
 
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.*;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
-import static com.sun.source.doctree.DocTree.Kind.UNKNOWN_BLOCK_TAG;
-
 public class TestSheetDoclet implements Doclet {
 
+    /**
+     * Tags read from the doc comment of a test class
+     */
+    static final TagHandlers<TestGroup> CLASS_TAGS = new TagHandlers<TestGroup>()
+            .register("id", (testGroup, content) -> testGroup.id = content)
+            .register("name", (testGroup, content) -> testGroup.name = content);
+
+    /**
+     * Tags read from the doc comment of a test method. An expected result belongs to the step preceding it, one before
+     * the first step is kept aside to be reported.
+     */
+    static final TagHandlers<TestSpecification> METHOD_TAGS = new TagHandlers<TestSpecification>()
+            .register("id", (testSpecification, content) -> testSpecification.id = content)
+            .register("name", (testSpecification, content) -> testSpecification.name = content)
+            .register("precondition", (testSpecification, content) -> testSpecification.preconditions.add(content))
+            .register("step", (testSpecification, content) -> {
+                final var testStep = new TestStep();
+                testStep.action = content;
+                testSpecification.steps.add(testStep);
+            })
+            .register("expectedResult", (testSpecification, content) -> {
+                if (testSpecification.steps.isEmpty()) {
+                    testSpecification.strayExpectedResults.add(content);
+                } else {
+                    testSpecification.steps.get(testSpecification.steps.size() - 1).expectedResults.add(content);
+                }
+            });
+
+    /**
+     * The formats a sheet can be written in
+     */
+    static final List<String> FORMATS = List.of("xml", "xlsx", "json", "csv");
+
+    /**
+     * The element kinds whose doc comments are read by default, all other elements never carry test tags. Type kinds are
+     * taken from the running JDK, so kinds newer than the compiled release, such as records, are included.
+     */
+    static final Set<ElementKind> DEFAULT_TAGGED_KINDS = Collections.unmodifiableSet(defaultTaggedKinds());
+
+    /**
+     * Test groups extracted by runs with {@code --collect}, by the key given to the option
+     */
+    static final Map<String, TestGroups> COLLECTED = new ConcurrentHashMap<>();
+
     private final TestGroups testGroups = new TestGroups();
+    private Reporter reporter;
+    private boolean streaming = false;
+    private boolean parallelWrite = false;
+    private List<String> formats = List.of("xml");
+    private OutputSink fileSink = OutputSink.file();
+    private boolean gzip = false;
+    private boolean parallel = false;
+    private ExtractionCache cache = null;
+    private DocletMetrics metrics = DocletMetrics.disabled();
+    private Path metricsFile = null;
+    private Set<ElementKind> taggedKinds = DEFAULT_TAGGED_KINDS;
+    private int groupsPerShard = 0;
+    private String collectKey = null;
+    private SheetDiff diff = null;
+    private Path snapshotFile = null;
+    private int pipelineCapacity = 0;
 
     @Override
     public void init(Locale locale, Reporter reporter) {
+        this.reporter = reporter;
     }
 
     @Override
@@ -33,7 +97,65 @@ public class TestSheetDoclet implements Doclet {
 
     @Override
     public Set<? extends Option> getSupportedOptions() {
-        return Collections.emptySet();
+        return Set.of(
+                new DocletOption("--streaming", "Stream the sheet to disk row by row instead of building it in memory", 0,
+                        args -> streaming = true),
+                new DocletOption("--parallel-write", "Serialize the worksheets of an xml sheet on the common fork-join pool "
+                        + "and write them in order", 0,
+                        args -> parallelWrite = true),
+                new DocletOption("--format", "The comma separated formats of the sheet: xml for Excel 2003 XML (default), "
+                        + "xlsx, json or csv. The xml, json and csv sheets are written in a single pass over the tests", 1,
+                        "<formats>",
+                        args -> formats = parseFormats(args.get(0))),
+                new DocletOption("--output-buffer", "Write the sheet through a file channel with a direct buffer of the given size in bytes", 1, "<bytes>",
+                        args -> {
+                            final int bufferSize = Integer.parseInt(args.get(0));
+                            if (bufferSize < 1) {
+                                throw new IllegalArgumentException("--output-buffer needs at least one byte: " + args.get(0));
+                            }
+                            fileSink = OutputSink.channel(bufferSize);
+                        }),
+                new DocletOption("--gzip", "Compress the sheet with gzip, for archiving", 0,
+                        args -> gzip = true),
+                new DocletOption("--parallel", "Parse the collected doc comments on the common fork-join pool", 0,
+                        args -> parallel = true),
+                new DocletOption("--cache", "Reuse the tests extracted from unchanged source files, cached in the given directory", 1, "<directory>",
+                        args -> cache = new ExtractionCache(Paths.get(args.get(0)))),
+                new DocletOption("--metrics", "Time each phase of the run and write a JSON summary to the given file", 1, "<file>",
+                        args -> {
+                            metricsFile = Paths.get(args.get(0));
+                            metrics = DocletMetrics.enabled();
+                        }),
+                new DocletOption("--tagged-kinds", "Only read the doc comments of these comma separated element kinds, by default "
+                        + "all types, such as classes, interfaces, enums and records, methods and constructors", 1, "<kinds>",
+                        args -> taggedKinds = parseElementKinds(args.get(0))),
+                new DocletOption("--shard", "Write one sheet per the given number of test groups, in parallel, "
+                        + "and a JSON manifest of the sheets", 1, "<groups>",
+                        args -> {
+                            groupsPerShard = Integer.parseInt(args.get(0));
+                            if (groupsPerShard < 1) {
+                                throw new IllegalArgumentException("A shard needs at least one group: " + args.get(0));
+                            }
+                        }),
+                new DocletOption("--diff", "Write a single sheet of only the tests added, changed or removed since the run "
+                        + "that stored the given hash manifest, and update it", 1, "<manifest>",
+                        args -> diff = new SheetDiff(Paths.get(args.get(0)))),
+                new DocletOption("--snapshot", "Also write the extracted tests to the given binary snapshot, which "
+                        + "docs.ModelSnapshot renders without running javadoc", 1, "<file>",
+                        args -> snapshotFile = Paths.get(args.get(0))),
+                new DocletOption("--pipeline", "Write the xml, json or csv sheets on a separate thread while the tests are "
+                        + "extracted, with at most the given number of finished groups waiting in between. The groups are "
+                        + "written in the order javadoc visits their types rather than in id order", 1, "<groups>",
+                        args -> {
+                            pipelineCapacity = Integer.parseInt(args.get(0));
+                            if (pipelineCapacity < 1) {
+                                throw new IllegalArgumentException("The pipeline needs room for at least one group: " + args.get(0));
+                            }
+                        }),
+                new DocletOption("--collect", "Hand the test groups to an in-process batch run under the given key, "
+                        + "instead of writing a sheet", 1, "<key>",
+                        args -> collectKey = args.get(0))
+        );
     }
 
     @Override
@@ -43,155 +165,701 @@ public class TestSheetDoclet implements Doclet {
 
     @Override
     public boolean run(DocletEnvironment docEnv) {
+        if (pipelineCapacity > 0) {
+            return runPipelined(docEnv);
+        }
+        if (diff != null && groupsPerShard > 0) {
+            reporter.print(Diagnostic.Kind.ERROR, "A diff is written as a single sheet of the changed tests, "
+                    + "and cannot be combined with --shard");
+            return false;
+        }
+
+        final List<CacheScope> cacheMisses = new ArrayList<>();
+        final List<ElementDocs> elementDocs;
+        final var traversal = metrics.startPhase("traversal");
+        try {
+            elementDocs = collectDocs(docEnv, cacheMisses, null);
+        } finally {
+            traversal.end();
+        }
+
+        // Parsing is independent per element, the collected list keeps the results in visitation order
+        final var parsing = metrics.startPhase("parsing");
+        try {
+            (parallel ? elementDocs.parallelStream() : elementDocs.stream()).forEach(ElementDocs::parse);
+        } finally {
+            parsing.end();
+        }
+
+        // Store before the results are added, the test groups are not cached with their specifications attached
+        if (cache != null) {
+            final var caching = metrics.startPhase("cache");
+            try {
+                cacheMisses.forEach(scope -> cache.store(scope.fileHash, scope.typeName, scope.toCachedDocs()));
+                cache.flush();
+            } finally {
+                caching.end();
+            }
+        }
+
+        final var model = metrics.startPhase("model");
+        try {
+            for (ElementDocs docs : elementDocs) {
+                docs.testGroup.ifPresent(group -> testGroups.addTestGroup(docs.typeName, group));
+                docs.testSpecification.ifPresent(test -> testGroups.addTestSpecification(docs.typeName, test));
+                reportStrayExpectedResults(docs);
+            }
+        } finally {
+            model.end();
+        }
+        reportOrphans(testGroups);
+
+        if (snapshotFile != null) {
+            final var snapshot = metrics.startPhase("snapshot");
+            try {
+                ModelSnapshot.write(testGroups, snapshotFile);
+            } finally {
+                snapshot.end();
+            }
+        }
+
+        if (collectKey != null) {
+            COLLECTED.put(collectKey, testGroups);
+            return true;
+        }
+
+        final var outputSink = metrics.instrument(gzip ? OutputSink.gzip(fileSink) : fileSink);
+        final List<String> outputFiles;
+        final var write = metrics.startPhase("write");
+        try {
+            if (diff != null) {
+                outputFiles = writeChanges(outputSink);
+            } else if (groupsPerShard > 0) {
+                if (formats.size() > 1) {
+                    reporter.print(Diagnostic.Kind.ERROR, "Sharded sheets are written in a single format");
+                    return false;
+                }
+                final var format = formats.get(0);
+                final var manifestFile = outputFileName("-manifest", "json", false);
+                outputFiles = new ShardedWriter(testGroups, groupsPerShard)
+                        .write((shard, filename) -> writeSheet(shard, format, streaming, parallelWrite, outputSink, filename),
+                                suffix -> outputFileName(suffix, format, gzip), manifestFile);
+                System.out.println(String.format("Wrote %d acceptance test sheets, listed in: %s", outputFiles.size(),
+                        Paths.get(manifestFile).toAbsolutePath()));
+            } else {
+                outputFiles = writeSheets(testGroups, formats, streaming, parallelWrite, outputSink,
+                        format -> outputFileName(format, gzip));
+                outputFiles.forEach(file -> System.out.println("Wrote acceptance test sheet to: " + Paths.get(file).toAbsolutePath()));
+            }
+        } finally {
+            write.end();
+        }
+
+        writeMetrics(testGroups.groups().size(), testGroups.groups().stream().mapToLong(group -> group.tests.size()).sum(),
+                outputFiles);
+        return true;
+    }
+
+    /**
+     * Extracts and writes at the same time. The groups of a top level type are complete once the type has been
+     * visited, as specifications only belong to the group of their enclosing type. They are parsed and handed to a
+     * {@link PipelinedWriter} right away, and not kept once written.
+     */
+    private boolean runPipelined(DocletEnvironment docEnv) {
+        if (formats.contains("xlsx") || groupsPerShard > 0 || diff != null || snapshotFile != null || collectKey != null) {
+            reporter.print(Diagnostic.Kind.ERROR, "A pipelined run only writes xml, json or csv sheets, "
+                    + "and cannot be combined with --shard, --diff, --snapshot or --collect");
+            return false;
+        }
+
+        final var outputSink = metrics.instrument(gzip ? OutputSink.gzip(fileSink) : fileSink);
+        final Map<String, String> outputFiles = new LinkedHashMap<>();
+        formats.forEach(format -> outputFiles.put(format, outputFileName(format, gzip)));
+        final List<CacheScope> cacheMisses = new ArrayList<>();
+        final long[] written = new long[2];
+
+        final var pipeline = metrics.startPhase("pipeline");
+        try (var writer = new PipelinedWriter(outputFiles, outputSink, pipelineCapacity)) {
+            collectDocs(docEnv, cacheMisses, typeDocs -> {
+                typeDocs.forEach(ElementDocs::parse);
+                // Entries are serialized on flush, which has to happen before the specifications are attached to the groups
+                if (cache != null) {
+                    cacheMisses.forEach(scope -> cache.store(scope.fileHash, scope.typeName, scope.toCachedDocs()));
+                    cacheMisses.clear();
+                    cache.flush();
+                }
+
+                final var typeGroups = new TestGroups();
+                for (ElementDocs docs : typeDocs) {
+                    docs.testGroup.ifPresent(group -> typeGroups.addTestGroup(docs.typeName, group));
+                    docs.testSpecification.ifPresent(test -> typeGroups.addTestSpecification(docs.typeName, test));
+                    reportStrayExpectedResults(docs);
+                }
+                reportOrphans(typeGroups);
+                for (TestGroup group : typeGroups.groups()) {
+                    writer.put(group);
+                    written[0]++;
+                    written[1] += group.tests.size();
+                }
+            });
+            writer.finish();
+        } finally {
+            pipeline.end();
+        }
+
+        outputFiles.values().forEach(file -> System.out.println("Wrote acceptance test sheet to: " + Paths.get(file).toAbsolutePath()));
+        writeMetrics(written[0], written[1], List.copyOf(outputFiles.values()));
+        return true;
+    }
+
+    private void reportOrphans(TestGroups testGroups) {
+        testGroups.orphans().forEach((typeName, tests) -> reporter.print(Diagnostic.Kind.WARNING,
+                String.format("%d test specification(s) in %s are skipped, the type has no test group", tests.size(), typeName)));
+    }
+
+    private void reportStrayExpectedResults(ElementDocs docs) {
+        docs.testSpecification.ifPresent(test -> test.strayExpectedResults.forEach(expectedResult -> reporter.print(
+                Diagnostic.Kind.WARNING, String.format("Expected result \"%s\" of test %s in %s is skipped, it comes before any step",
+                        expectedResult, test.id, docs.typeName))));
+    }
+
+    private void writeMetrics(long groups, long specifications, List<String> outputFiles) {
+        if (metricsFile == null) {
+            return;
+        }
+        metrics.count("testGroups", groups);
+        metrics.count("testSpecifications", specifications);
+        metrics.count("bytesWritten", outputFiles.stream().mapToLong(file -> Paths.get(file).toFile().length()).sum());
+        metrics.write(metricsFile);
+        System.out.println("Wrote doclet metrics to: " + metricsFile.toAbsolutePath());
+    }
+
+    /**
+     * Writes the tests that changed since the stored hash manifest, and updates the manifest once they are written
+     *
+     * @return The written sheet, if any test changed
+     */
+    private List<String> writeChanges(OutputSink outputSink) {
+        final var changes = diff.compare(testGroups);
+        if (changes.isEmpty()) {
+            System.out.println("No tests changed since the last run");
+            return List.of();
+        }
+
+        final var outputFiles = writeSheets(changes.testGroups, formats, streaming, parallelWrite, outputSink,
+                format -> outputFileName("-changes", format, gzip));
+        diff.store(changes);
+        System.out.println(String.format("Wrote %d added, %d changed and %d removed tests to: %s",
+                changes.added, changes.changed, changes.removed, outputFiles.stream()
+                        .map(file -> Paths.get(file).toAbsolutePath().toString())
+                        .collect(Collectors.joining(", "))));
+        return outputFiles;
+    }
+
+    /**
+     * Walks all specified elements and collects the block tags of every documented type and executable, in visitation order.
+     * The doc trees are only read here, all parsing of the tag content is left to {@link ElementDocs#parse()}.
+     * <p>
+     * With a cache, top level types from unchanged source files are not visited at all. Their previously extracted docs
+     * are added instead, and every top level type that had to be visited is added to {@code cacheMisses}.
+     * <p>
+     * Only packages, types and the element kinds in {@link #taggedKinds} are visited, fields, type parameters and the
+     * like are never looked at. A doc tree is only built for elements whose raw doc comment may contain a block tag.
+     *
+     * @param onTopLevelType If given, receives the docs of every top level type as soon as it has been visited, and
+     *                       they are not collected
+     */
+    private List<ElementDocs> collectDocs(DocletEnvironment docEnv, List<CacheScope> cacheMisses,
+                                          Consumer<List<ElementDocs>> onTopLevelType) {
         final DocTrees docTrees = docEnv.getDocTrees();
+        final Elements elements = docEnv.getElementUtils();
+        final List<ElementDocs> elementDocs = new ArrayList<>();
 
         for (Element element : docEnv.getSpecifiedElements()) {
             element.accept(new ElementVisitor<Void, Void>() {
+                private CacheScope scope = null;
+
+                private void add(ElementDocs docs) {
+                    elementDocs.add(docs);
+                    if (scope != null) {
+                        scope.docs.add(docs);
+                    }
+                }
+
+                private Optional<List<? extends DocTree>> tagsOf(Element e) {
+                    if (!taggedKinds.contains(e.getKind()) || !mayHaveBlockTags(elements, e)) {
+                        return Optional.empty();
+                    }
+                    return blockTags(docTrees.getDocCommentTree(e));
+                }
+
+                private void visitEnclosed(Element e) {
+                    for (Element enclosed : e.getEnclosedElements()) {
+                        final var kind = enclosed.getKind();
+                        // Nested types are always visited, they may hold tagged elements of their own
+                        if (kind.isClass() || kind.isInterface() || taggedKinds.contains(kind)) {
+                            enclosed.accept(this, null);
+                        }
+                    }
+                }
+
                 @Override
                 public Void visit(Element e, Void aVoid) {
-                    e.getEnclosedElements().forEach(enc -> enc.accept(this, null));
+                    metrics.elementVisited();
                     return null;
                 }
 
                 @Override
                 public Void visitPackage(PackageElement e, Void aVoid) {
+                    metrics.elementVisited();
                     e.getEnclosedElements().forEach(enc -> enc.accept(this, null));
                     return null;
                 }
 
+                private void handOver(TypeElement e, int from) {
+                    if (onTopLevelType != null && e.getNestingKind() == NestingKind.TOP_LEVEL) {
+                        final var typeDocs = elementDocs.subList(from, elementDocs.size());
+                        onTopLevelType.accept(new ArrayList<>(typeDocs));
+                        typeDocs.clear();
+                    }
+                }
+
                 @Override
                 public Void visitType(TypeElement e, Void aVoid) {
-                    parseClassDocs(docTrees.getDocCommentTree(e)).ifPresent(testGroups::addTestGroup);
-                    e.getEnclosedElements().forEach(enc -> enc.accept(this, null));
+                    metrics.elementVisited();
+                    final int from = elementDocs.size();
+                    if (cache != null && e.getNestingKind() == NestingKind.TOP_LEVEL) {
+                        final var fileHash = cache.hash(docTrees.getPath(e).getCompilationUnit().getSourceFile(), taggedKinds);
+                        final var typeName = e.getQualifiedName().toString();
+                        final var cached = cache.lookup(fileHash, typeName);
+                        if (cached.isPresent()) {
+                            scope = null;
+                            cached.get().forEach(docs -> elementDocs.add(new ElementDocs(docs)));
+                            handOver(e, from);
+                            return null;
+                        }
+                        scope = new CacheScope(fileHash, typeName);
+                        cacheMisses.add(scope);
+                    }
+
+                    tagsOf(e).ifPresent(tags -> add(new ElementDocs(true, e.getQualifiedName().toString(), tags)));
+                    visitEnclosed(e);
+                    handOver(e, from);
                     return null;
                 }
 
                 @Override
                 public Void visitVariable(VariableElement e, Void aVoid) {
-                    e.getEnclosedElements().forEach(enc -> enc.accept(this, null));
+                    metrics.elementVisited();
                     return null;
                 }
 
                 @Override
                 public Void visitExecutable(ExecutableElement e, Void aVoid) {
-                    parseMethodDocs(docTrees.getDocCommentTree(e)).ifPresent(testGroups::addTestSpecification);
-                    e.getEnclosedElements().forEach(enc -> enc.accept(this, null));
+                    metrics.elementVisited();
+                    tagsOf(e).ifPresent(tags -> add(new ElementDocs(false, enclosingTypeName(e), tags)));
                     return null;
                 }
 
                 @Override
                 public Void visitTypeParameter(TypeParameterElement e, Void aVoid) {
-                    e.getEnclosedElements().forEach(enc -> enc.accept(this, null));
+                    metrics.elementVisited();
                     return null;
                 }
 
                 @Override
                 public Void visitUnknown(Element e, Void aVoid) {
-                    e.getEnclosedElements().forEach(enc -> enc.accept(this, null));
+                    metrics.elementVisited();
                     return null;
                 }
             }, null);
         }
 
-        final var outputFile = String.format("%s-nimble-acceptance-tests.xml", getDate());
-        final var testSheetWriter = new JacksonWriter(testGroups);
-        testSheetWriter.write(outputFile);
-        System.out.println("Wrote acceptance test sheet to: " + Paths.get(outputFile).toAbsolutePath());
+        // Docs outside of any top level type, of nested types that were specified on their own
+        if (onTopLevelType != null && !elementDocs.isEmpty()) {
+            onTopLevelType.accept(new ArrayList<>(elementDocs));
+            elementDocs.clear();
+        }
+        return elementDocs;
+    }
 
-        return true;
+    private static String enclosingTypeName(Element e) {
+        return ((TypeElement) e.getEnclosingElement()).getQualifiedName().toString();
     }
 
-    private String getDate() {
-        final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        return formatter.format(ZonedDateTime.now());
+    /**
+     * Block tags start with {@code @}, so a raw doc comment without one has none. Reading the raw comment is much cheaper
+     * than building its doc tree.
+     */
+    private static boolean mayHaveBlockTags(Elements elements, Element e) {
+        final var rawComment = elements.getDocComment(e);
+        return rawComment != null && rawComment.indexOf('@') >= 0;
+    }
+
+    private static Set<ElementKind> defaultTaggedKinds() {
+        final Set<ElementKind> kinds = EnumSet.of(ElementKind.METHOD, ElementKind.CONSTRUCTOR);
+        for (ElementKind kind : ElementKind.values()) {
+            if (kind.isClass() || kind.isInterface()) {
+                kinds.add(kind);
+            }
+        }
+        return kinds;
     }
 
-    private Optional<TestGroup> parseClassDocs(DocCommentTree dcTree) {
+    static Set<ElementKind> parseElementKinds(String kinds) {
+        final Set<ElementKind> parsed = EnumSet.noneOf(ElementKind.class);
+        for (String kind : kinds.split(",")) {
+            parsed.add(ElementKind.valueOf(kind.strip().toUpperCase(Locale.ROOT)));
+        }
+        return parsed;
+    }
+
+    private static Optional<List<? extends DocTree>> blockTags(DocCommentTree dcTree) {
         if (dcTree == null) {
             return Optional.empty();
         }
 
         final List<? extends DocTree> tags = dcTree.getBlockTags();
-        if (tags.isEmpty()) {
-            return Optional.empty();
-        }
+        return tags.isEmpty() ? Optional.empty() : Optional.of(tags);
+    }
 
-        final var testGroup = new TestGroup();
-        tags.forEach(tag -> {
-            if (tag.getKind() == UNKNOWN_BLOCK_TAG) {
-                final var unknown = (UnknownBlockTagTree) tag;
-                final var tagName = unknown.getTagName();
-                final var content = unknown.getContent().stream().map(obj -> obj.toString().replaceAll("\n", "")).collect(Collectors.joining(" "));
+    /**
+     * @return The dated name of the sheet written by today's run
+     */
+    static String outputFileName(String format, boolean gzip) {
+        return outputFileName("", format, gzip);
+    }
 
-                switch (tagName) {
-                    case "id":
-                        testGroup.id = content;
-                        break;
-                    case "name":
-                        testGroup.name = content;
-                        break;
-                }
+    /**
+     * @param suffix Appended to the base name, such as the number of a shard
+     */
+    static String outputFileName(String suffix, String format, boolean gzip) {
+        return String.format("%s-nimble-acceptance-tests%s.%s%s", getDate(), suffix, format, gzip ? ".gz" : "");
+    }
 
+    /**
+     * @return The distinct formats of a comma separated list, in the order given
+     */
+    static List<String> parseFormats(String formats) {
+        final Set<String> parsed = new LinkedHashSet<>();
+        for (String format : formats.split(",")) {
+            if (!FORMATS.contains(format.strip())) {
+                throw new IllegalArgumentException("Unsupported format: " + format);
             }
-        });
+            parsed.add(format.strip());
+        }
+        return List.copyOf(parsed);
+    }
+
+    /**
+     * Writes the test groups in all of the given formats. A single xml sheet is written as configured, otherwise the
+     * xml, json and csv sheets are rendered together in one pass over the tests. An xlsx workbook needs all of its
+     * strings up front, and is always written on its own.
+     *
+     * @param outputFile The file name of each format
+     * @return The written files, in the order of the formats
+     */
+    static List<String> writeSheets(TestGroups testGroups, List<String> formats, boolean streaming, boolean parallelWrite,
+                                    OutputSink outputSink, Function<String, String> outputFile) {
+        if (formats.size() == 1) {
+            final var file = outputFile.apply(formats.get(0));
+            writeSheet(testGroups, formats.get(0), streaming, parallelWrite, outputSink, file);
+            return List.of(file);
+        }
+
+        final Map<String, String> singlePass = new LinkedHashMap<>();
+        for (String format : formats) {
+            if (format.equals("xlsx")) {
+                new XlsxWriter(testGroups, outputSink).write(outputFile.apply(format));
+            } else {
+                singlePass.put(format, outputFile.apply(format));
+            }
+        }
+        new MultiFormatWriter(testGroups, outputSink).write(singlePass);
+        return formats.stream().map(outputFile).collect(Collectors.toList());
+    }
+
+    /**
+     * Writes the test groups with the writer for the given format
+     */
+    static void writeSheet(TestGroups testGroups, String format, boolean streaming, boolean parallelWrite,
+                           OutputSink outputSink, String outputFile) {
+        if ("json".equals(format) || "csv".equals(format)) {
+            new MultiFormatWriter(testGroups, outputSink).write(Map.of(format, outputFile));
+        } else if ("xlsx".equals(format)) {
+            new XlsxWriter(testGroups, outputSink).write(outputFile);
+        } else if (parallelWrite) {
+            new JacksonWriter(testGroups, outputSink).writeParallel(outputFile);
+        } else if (streaming) {
+            new JacksonWriter(testGroups, outputSink).writeStreaming(outputFile);
+        } else {
+            new JacksonWriter(testGroups, outputSink).write(outputFile);
+        }
+    }
+
+    private static String getDate() {
+        final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+        return formatter.format(ZonedDateTime.now());
+    }
 
+    private static Optional<TestGroup> parseClassDocs(List<? extends DocTree> tags) {
+        final var testGroup = new TestGroup();
+        CLASS_TAGS.apply(testGroup, tags);
         return testGroup.isComplete() ? Optional.of(testGroup) : Optional.empty();
     }
 
-    private Optional<TestSpecification> parseMethodDocs(DocCommentTree dcTree) {
-        if (dcTree == null) {
-            return Optional.empty();
+    private static Optional<TestSpecification> parseMethodDocs(List<? extends DocTree> tags) {
+        final var testSpecification = new TestSpecification();
+        METHOD_TAGS.apply(testSpecification, tags);
+        return testSpecification.isComplete() ? Optional.of(testSpecification) : Optional.empty();
+    }
+
+    private static class DocletOption implements Option {
+
+        private final String name;
+        private final String description;
+        private final int argumentCount;
+        private final String parameters;
+        private final Consumer<List<String>> processor;
+
+        DocletOption(String name, String description, int argumentCount, Consumer<List<String>> processor) {
+            this(name, description, argumentCount, "", processor);
         }
 
-        final List<? extends DocTree> tags = dcTree.getBlockTags();
-        if (tags.isEmpty()) {
-            return Optional.empty();
+        DocletOption(String name, String description, int argumentCount, String parameters, Consumer<List<String>> processor) {
+            this.name = name;
+            this.description = description;
+            this.argumentCount = argumentCount;
+            this.parameters = parameters;
+            this.processor = processor;
         }
 
-        final var testSpecification = new TestSpecification();
+        @Override
+        public int getArgumentCount() {
+            return argumentCount;
+        }
 
-        tags.forEach(tag -> {
-            if (tag.getKind() == UNKNOWN_BLOCK_TAG) {
-                final var unknown = (UnknownBlockTagTree) tag;
-                final var tagName = unknown.getTagName();
-                final var content = unknown.getContent().stream().map(obj -> obj.toString().replaceAll("\n", "")).collect(Collectors.joining(" "));
-                switch (tagName) {
-                    case "id":
-                        testSpecification.id = content;
-                        break;
-                    case "name":
-                        testSpecification.name = content;
-                        break;
-                    case "precondition":
-                        testSpecification.preconditions.add(content);
-                        break;
-                    case "step":
-                        final var testStep = new TestStep();
-                        testStep.action = content;
-                        testSpecification.steps.add(testStep);
-                        break;
-                    case "expectedResult":
-                        break;
-                }
-            }
-        });
+        @Override
+        public String getDescription() {
+            return description;
+        }
 
-        return testSpecification.isComplete() ? Optional.of(testSpecification) : Optional.empty();
+        @Override
+        public Kind getKind() {
+            return Kind.STANDARD;
+        }
+
+        @Override
+        public List<String> getNames() {
+            return List.of(name);
+        }
+
+        @Override
+        public String getParameters() {
+            return parameters;
+        }
+
+        @Override
+        public boolean process(String option, List<String> arguments) {
+            processor.accept(arguments);
+            return true;
+        }
     }
 
+    /**
+     * The raw block tags of a single documented element, and the result of parsing them
+     */
+    private static class ElementDocs {
+
+        final boolean type;
+        final String typeName;
+        final List<? extends DocTree> tags;
+        Optional<TestGroup> testGroup = Optional.empty();
+        Optional<TestSpecification> testSpecification = Optional.empty();
+
+        /**
+         * @param typeName The qualified name of the type itself, or of the type enclosing an executable
+         */
+        ElementDocs(boolean type, String typeName, List<? extends DocTree> tags) {
+            this.type = type;
+            this.typeName = typeName;
+            this.tags = tags;
+        }
+
+        ElementDocs(ExtractionCache.CachedDocs cached) {
+            this.type = cached.testGroup != null;
+            this.typeName = cached.typeName;
+            this.tags = null;
+            this.testGroup = Optional.ofNullable(cached.testGroup);
+            this.testSpecification = Optional.ofNullable(cached.testSpecification);
+        }
+
+        void parse() {
+            if (tags == null) {
+                // Restored from the cache
+                return;
+            }
+            if (type) {
+                testGroup = parseClassDocs(tags);
+            } else {
+                testSpecification = parseMethodDocs(tags);
+            }
+        }
+    }
+
+    /**
+     * A top level type that was not found in the cache, and the docs collected from it
+     */
+    private static class CacheScope {
+
+        final String fileHash;
+        final String typeName;
+        final List<ElementDocs> docs = new ArrayList<>();
+
+        CacheScope(String fileHash, String typeName) {
+            this.fileHash = fileHash;
+            this.typeName = typeName;
+        }
+
+        List<ExtractionCache.CachedDocs> toCachedDocs() {
+            final List<ExtractionCache.CachedDocs> cachedDocs = new ArrayList<>();
+            for (ElementDocs elementDocs : docs) {
+                if (elementDocs.testGroup.isEmpty() && elementDocs.testSpecification.isEmpty()) {
+                    continue;
+                }
+                final var cached = new ExtractionCache.CachedDocs();
+                cached.typeName = elementDocs.typeName;
+                cached.testGroup = elementDocs.testGroup.orElse(null);
+                cached.testSpecification = elementDocs.testSpecification.orElse(null);
+                cachedDocs.add(cached);
+            }
+            return cachedDocs;
+        }
+    }
+
+    /**
+     * All test groups, ordered by id. Numeric ids come first in numeric order, followed by all other ids in natural
+     * string order. Groups with equal ids keep the order in which they were added.
+     */
     static class TestGroups {
 
-        List<TestGroup> testGroups = new ArrayList<>();
-        TestGroup mostRecentTestGroup = null;
+        private final NavigableMap<GroupKey, TestGroup> ordered = new TreeMap<>();
+        private final Map<String, TestGroup> byId = new HashMap<>();
+        private final Map<String, TestGroup> byType = new HashMap<>();
+        private final Map<String, List<TestSpecification>> pendingByType = new LinkedHashMap<>();
+        private long sequence = 0;
+
+        /**
+         * @param typeName The qualified name of the type carrying the group tags
+         */
+        void addTestGroup(String typeName, TestGroup group) {
+            ordered.put(new GroupKey(group.id, sequence++), group);
+            byId.putIfAbsent(group.id, group);
+            byType.put(typeName, group);
+
+            final var pending = pendingByType.remove(typeName);
+            if (pending != null) {
+                pending.forEach(group::addTest);
+            }
+        }
+
+        /**
+         * Attaches the specification to the group of its enclosing type. If that group has not been added yet, the
+         * specification is held back until it is.
+         *
+         * @param typeName The qualified name of the type enclosing the test method
+         */
+        void addTestSpecification(String typeName, TestSpecification testSpecification) {
+            final var group = byType.get(typeName);
+            if (group != null) {
+                group.addTest(testSpecification);
+            } else {
+                pendingByType.computeIfAbsent(typeName, key -> new ArrayList<>()).add(testSpecification);
+            }
+        }
 
-        void addTestGroup(TestGroup group) {
-            mostRecentTestGroup = group;
-            testGroups.add(group);
-            testGroups.sort(Comparator.comparing(elem -> Integer.valueOf(elem.id)));
+        /**
+         * @return All groups in id order
+         */
+        Collection<TestGroup> groups() {
+            return Collections.unmodifiableCollection(ordered.values());
         }
 
-        void addTestSpecification(TestSpecification testSpecification) {
-            mostRecentTestGroup.tests.add(testSpecification);
+        Optional<TestGroup> getTestGroup(String id) {
+            return Optional.ofNullable(byId.get(id));
+        }
+
+        /**
+         * Adds all groups of the other test groups, and its specifications that never got a group
+         */
+        void addAll(TestGroups other) {
+            for (TestGroup group : other.ordered.values()) {
+                ordered.put(new GroupKey(group.id, sequence++), group);
+                byId.putIfAbsent(group.id, group);
+            }
+            byType.putAll(other.byType);
+            other.pendingByType.forEach((typeName, tests) ->
+                    pendingByType.computeIfAbsent(typeName, key -> new ArrayList<>()).addAll(tests));
+        }
+
+        /**
+         * @return The groups split into consecutive shards of at most the given number of groups, in id order
+         */
+        List<TestGroups> shards(int groupsPerShard) {
+            final List<TestGroups> shards = new ArrayList<>();
+            TestGroups shard = null;
+            for (Map.Entry<GroupKey, TestGroup> entry : ordered.entrySet()) {
+                if (shard == null || shard.ordered.size() == groupsPerShard) {
+                    shard = new TestGroups();
+                    shards.add(shard);
+                }
+                shard.ordered.put(entry.getKey(), entry.getValue());
+                shard.byId.putIfAbsent(entry.getValue().id, entry.getValue());
+            }
+            return shards;
+        }
+
+        /**
+         * @return The specifications of types that never got a group, by type name
+         */
+        Map<String, List<TestSpecification>> orphans() {
+            return Collections.unmodifiableMap(pendingByType);
+        }
+    }
+
+    /**
+     * Sort key of a test group, the id is parsed once when the group is added
+     */
+    private static class GroupKey implements Comparable<GroupKey> {
+
+        final boolean numeric;
+        final long number;
+        final String id;
+        final long sequence;
+
+        GroupKey(String id, long sequence) {
+            this.id = id == null ? "" : id;
+            this.sequence = sequence;
+
+            long number = 0;
+            boolean numeric;
+            try {
+                number = Long.parseLong(this.id);
+                numeric = true;
+            } catch (NumberFormatException err) {
+                numeric = false;
+            }
+            this.numeric = numeric;
+            this.number = number;
+        }
+
+        @Override
+        public int compareTo(GroupKey other) {
+            if (numeric != other.numeric) {
+                return numeric ? -1 : 1;
+            }
+            final int byId = numeric ? Long.compare(number, other.number) : id.compareTo(other.id);
+            return byId != 0 ? byId : Long.compare(sequence, other.sequence);
         }
     }
 
@@ -200,10 +868,61 @@ public class TestSheetDoclet implements Doclet {
         String id;
         String name;
         List<TestSpecification> tests = new ArrayList<>();
+        // Derived from the tests, so it is not cached along with the group
+        transient GroupLayout layout = new GroupLayout();
 
         boolean isComplete() {
             return true;
         }
+
+        /**
+         * Adds a complete specification, its steps are not expected to change afterwards
+         */
+        void addTest(TestSpecification test) {
+            tests.add(test);
+            layout.add(test);
+        }
+
+        void clearTests() {
+            tests.clear();
+            layout = new GroupLayout();
+        }
+    }
+
+    /**
+     * Statistics of the tests of a group that decide how its worksheet is laid out, accumulated as the tests are added
+     * so that writers need no extra pass over the steps to size their columns and tables
+     */
+    static class GroupLayout {
+
+        int tests = 0;
+        int preconditions = 0;
+        int steps = 0;
+        // Expected results after the first of a step, each takes a row of its own
+        int additionalResults = 0;
+        int maxActionLength = 0;
+        int maxExpectedResultLength = 0;
+
+        void add(TestSpecification test) {
+            tests++;
+            preconditions += test.preconditions.size();
+            for (TestStep step : test.steps) {
+                steps++;
+                additionalResults += Math.max(0, step.expectedResults.size() - 1);
+                maxActionLength = Math.max(maxActionLength, step.action.length());
+                for (String expectedResult : step.expectedResults) {
+                    maxExpectedResultLength = Math.max(maxExpectedResultLength, expectedResult.length());
+                }
+            }
+        }
+
+        /**
+         * @return The rows of the worksheet: the id, name, precondition and step headers and two separator rows per
+         * test, plus a row per precondition, step and additional expected result
+         */
+        int rows() {
+            return tests * 6 + preconditions + steps + additionalResults;
+        }
     }
 
     static class TestSpecification {
@@ -212,6 +931,8 @@ public class TestSheetDoclet implements Doclet {
         String name;
         List<String> preconditions = new ArrayList<>();
         List<TestStep> steps = new ArrayList<>();
+        // Expected results given before the first step, not part of the sheet but cached so that every run reports them
+        List<String> strayExpectedResults = new ArrayList<>();
 
         public boolean isComplete() {
             return true;
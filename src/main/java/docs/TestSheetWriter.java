@@ -4,18 +4,19 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+import javax.xml.namespace.NamespaceContext;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.PrintStream;
-import java.util.function.Function;
+import java.util.Map;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
@@ -23,15 +24,24 @@ import static java.util.Objects.requireNonNull;
 class TestSheetWriter {
 
     private static final String ns = "urn:schemas-microsoft-com:office:spreadsheet";
+    private static final String XML_PROLOG = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n<?mso-application progid=\"Excel.Sheet\"?>\n";
+
+    private static final NamespaceContext WORKBOOK_NAMESPACES = new OrderedFragments.DeclaredNamespaces(Map.of("", ns, "ss", ns));
 
     private static final Style inputCellStyle = new Style(false, false, "#000000", null);
     private static final Style labelCellStyle = new Style(true, false, "#FFFFFF", "#5ba49a");
     private static final Style centeredLabelCellStyle = new Style(true, true, "#FFFFFF", "#5ba49a");
 
     private final TestSheetDoclet.TestGroups testGroups;
+    private final OutputSink outputSink;
 
     TestSheetWriter(TestSheetDoclet.TestGroups testGroups) {
+        this(testGroups, OutputSink.file());
+    }
+
+    TestSheetWriter(TestSheetDoclet.TestGroups testGroups, OutputSink outputSink) {
         this.testGroups = requireNonNull(testGroups);
+        this.outputSink = requireNonNull(outputSink);
     }
 
     /**
@@ -51,133 +61,191 @@ class TestSheetWriter {
             styles.appendChild(createStyleElement(document, centeredLabelCellStyle));
             workbook.appendChild(styles);
 
-            for (TestSheetDoclet.TestGroup testGroup : testGroups.testGroups) {
+            for (TestSheetDoclet.TestGroup testGroup : testGroups.groups()) {
                 final var worksheet = document.createElementNS(ns, "Worksheet");
                 worksheet.setAttributeNS(ns, "Name", String.format("%s - %s", testGroup.id, testGroup.name));
                 final var table = document.createElementNS(ns, "Table");
+                addTestGroup(testGroup, new DomTable(document, table));
+                worksheet.appendChild(table);
+                workbook.appendChild(worksheet);
+            }
+            document.appendChild(workbook);
+            prettyPrint(document, filename);
+        } catch (Exception err) {
+            throw new RuntimeException(err);
+        }
+    }
 
-                // Create 5 columns of appropriate width
-                for (int i = 0; i < 5; i++) {
-                    final var column = document.createElementNS(ns, "Column");
-
-                    final var multiplier = 4.5; // This was found by trial-and-error and depends on font type
-                    switch (i) {
-                        case 1:
-                            column.setAttributeNS(ns, "Width", String.valueOf(getMaxColumnWidth(testGroup, step1 -> step1.action.length()) * multiplier));
-                            break;
-                        case 2:
-                            column.setAttributeNS(ns, "Width", String.valueOf(getMaxColumnWidth(testGroup, step -> step.expectedResults.stream().mapToInt(String::length).max().orElse(0)) * multiplier));
-                            break;
-                        case 4:
-                            column.setAttributeNS(ns, "Width", "200"); // The "Comment" column has double width
-                            break;
-                        default:
-                            column.setAttributeNS(ns, "Width", "100");
-                            break;
+    /**
+     * Write the same Excel XML as {@link #write(String)}, but element by element to an {@link XMLStreamWriter}.
+     * No DOM is built and the output is not indented, which keeps memory use flat for large suites.
+     *
+     * @param filename The filename to write the generated Excel file to
+     */
+    void writeStreaming(String filename) {
+        try (var outputStream = outputSink.open(filename)) {
+            // Required processing instructions
+            outputStream.write(XML_PROLOG.getBytes(UTF_8));
+
+            // Use the JDK implementation directly, the service lookup may be pointed at a provider we cannot load
+            final var xml = XMLOutputFactory.newDefaultFactory().createXMLStreamWriter(outputStream, "UTF-8");
+            writeWorkbookStart(xml);
+            for (TestSheetDoclet.TestGroup testGroup : testGroups.groups()) {
+                writeWorksheet(xml, testGroup);
+            }
 
-                    }
-                    table.appendChild(column);
-                }
+            xml.writeEndElement();
+            xml.close();
+        } catch (Exception err) {
+            throw new RuntimeException(err);
+        }
+    }
 
-                for (TestSheetDoclet.TestSpecification test : testGroup.tests) {
-                    table.appendChild(
-                            createRow(document,
-                                    createStringCell(document, "Test number", labelCellStyle),
-                                    createStringCell(document, test.id, inputCellStyle, 2),
-                                    createStringCell(document, "Tested by", labelCellStyle),
-                                    createStringCell(document, "", inputCellStyle)
-                            )
-                    );
-
-                    table.appendChild(
-                            createRow(document,
-                                    createStringCell(document, "Test name", labelCellStyle),
-                                    createStringCell(document, test.name, inputCellStyle, 2),
-                                    createStringCell(document, "Tested on", labelCellStyle),
-                                    createStringCell(document, "", inputCellStyle)
-                            )
-                    );
-
-                    table.appendChild(
-                            createRow(document,
-                                    createStringCell(document, "Precondition", labelCellStyle),
-                                    createStringCell(document, "", labelCellStyle, 4)
-                            )
-                    );
-
-                    int preCondNum = 1;
-                    for (String precondition : test.preconditions) {
-                        table.appendChild(
-                                createRow(document,
-                                        createStringCell(document, String.valueOf(preCondNum++), centeredLabelCellStyle),
-                                        createStringCell(document, precondition, inputCellStyle, 2),
-                                        createStringCell(document, "", labelCellStyle, 2)
-                                )
-                        );
-                    }
+    /**
+     * Parallel variant of {@link #writeStreaming(String)}. Every worksheet is rendered into its own buffer on the common
+     * fork-join pool, and the buffers are written after the styles in group order.
+     *
+     * @param filename The filename to write the generated Excel file to
+     */
+    void writeParallel(String filename) {
+        final var factory = XMLOutputFactory.newDefaultFactory();
+        try (var outputStream = outputSink.open(filename)) {
+            outputStream.write(XML_PROLOG.getBytes(UTF_8));
+
+            final var xml = factory.createXMLStreamWriter(outputStream, "UTF-8");
+            writeWorkbookStart(xml);
+            xml.flush();
+
+            OrderedFragments.write(outputStream, testGroups.groups(), (testGroup, fragment) -> {
+                final var fragmentXml = factory.createXMLStreamWriter(fragment, "UTF-8");
+                fragmentXml.setNamespaceContext(WORKBOOK_NAMESPACES);
+                writeWorksheet(fragmentXml, testGroup);
+                fragmentXml.close();
+            });
+
+            xml.writeEndElement();
+            xml.close();
+        } catch (Exception err) {
+            throw new RuntimeException(err);
+        }
+    }
 
-                    final var stepRow = createRow(document,
-                            createStringCell(document, "Step", labelCellStyle),
-                            createStringCell(document, "Action", labelCellStyle),
-                            createStringCell(document, "Expected result", labelCellStyle),
-                            createStringCell(document, "Pass/fail", labelCellStyle),
-                            createStringCell(document, "Comment", labelCellStyle)
-                    );
-                    table.appendChild(stepRow);
-
-                    int stepNum = 1;
-                    for (TestSheetDoclet.TestStep step : test.steps) {
-                        final var row = createRow(document,
-                                createStringCell(document, String.valueOf(stepNum++), centeredLabelCellStyle),
-                                createStringCell(document, step.action, inputCellStyle),
-                                createStringCell(document, "", inputCellStyle),
-                                createStringCell(document, "", inputCellStyle)
-                        );
-                        table.appendChild(row);
-
-                        if (step.expectedResults.size() > 1) {
-                            for (String expectedResult : step.expectedResults.subList(1, step.expectedResults.size())) {
-                                final var expResRow = createRow(document,
-                                        createStringCell(document, "", centeredLabelCellStyle),
-                                        createStringCell(document, "", inputCellStyle),
-                                        createStringCell(document, expectedResult, inputCellStyle),
-                                        createStringCell(document, "", inputCellStyle),
-                                        createStringCell(document, "", inputCellStyle)
-                                );
-                                table.appendChild(expResRow);
-
-                            }
-                        }
-                    }
+    /**
+     * Opens the root element, declaring the namespaces used by all worksheets, and writes the styles
+     */
+    private void writeWorkbookStart(XMLStreamWriter xml) throws XMLStreamException {
+        xml.writeStartElement("", "Workbook", ns);
+        xml.writeDefaultNamespace(ns);
+        xml.writeNamespace("ss", ns);
+
+        xml.writeStartElement("", "Styles", ns);
+        writeStyle(xml, inputCellStyle);
+        writeStyle(xml, labelCellStyle);
+        writeStyle(xml, centeredLabelCellStyle);
+        xml.writeEndElement();
+    }
+
+    private void writeWorksheet(XMLStreamWriter xml, TestSheetDoclet.TestGroup testGroup) throws XMLStreamException {
+        xml.writeStartElement("", "Worksheet", ns);
+        xml.writeAttribute("ss", ns, "Name", String.format("%s - %s", testGroup.id, testGroup.name));
+        xml.writeStartElement("", "Table", ns);
+        addTestGroup(testGroup, new StreamingTable(xml));
+        xml.writeEndElement();
+        xml.writeEndElement();
+    }
+
+    /**
+     * Lays out the columns and rows of a single test group, independent of how they end up being written
+     */
+    private void addTestGroup(TestSheetDoclet.TestGroup testGroup, TableSink table) {
+        // Create 5 columns of appropriate width
+        final var layout = testGroup.layout;
+        for (int i = 0; i < 5; i++) {
+            final var multiplier = 4.5; // This was found by trial-and-error and depends on font type
+            switch (i) {
+                case 1:
+                    table.addColumn(String.valueOf(layout.maxActionLength * multiplier));
+                    break;
+                case 2:
+                    table.addColumn(String.valueOf(layout.maxExpectedResultLength * multiplier));
+                    break;
+                case 4:
+                    table.addColumn("200"); // The "Comment" column has double width
+                    break;
+                default:
+                    table.addColumn("100");
+                    break;
 
-                    // Two empty rows as separators between tests
-                    for (int i = 0; i < 2; i++) {
-                        table.appendChild(
-                                createRow(document,
-                                        createEmptyCell(document),
-                                        createEmptyCell(document),
-                                        createEmptyCell(document),
-                                        createEmptyCell(document),
-                                        createEmptyCell(document)
-                                )
+            }
+        }
+
+        for (TestSheetDoclet.TestSpecification test : testGroup.tests) {
+            table.addRow(
+                    stringCell("Test number", labelCellStyle),
+                    stringCell(test.id, inputCellStyle, 2),
+                    stringCell("Tested by", labelCellStyle),
+                    stringCell("", inputCellStyle)
+            );
+
+            table.addRow(
+                    stringCell("Test name", labelCellStyle),
+                    stringCell(test.name, inputCellStyle, 2),
+                    stringCell("Tested on", labelCellStyle),
+                    stringCell("", inputCellStyle)
+            );
+
+            table.addRow(
+                    stringCell("Precondition", labelCellStyle),
+                    stringCell("", labelCellStyle, 4)
+            );
+
+            int preCondNum = 1;
+            for (String precondition : test.preconditions) {
+                table.addRow(
+                        stringCell(String.valueOf(preCondNum++), centeredLabelCellStyle),
+                        stringCell(precondition, inputCellStyle, 2),
+                        stringCell("", labelCellStyle, 2)
+                );
+            }
+
+            table.addRow(
+                    stringCell("Step", labelCellStyle),
+                    stringCell("Action", labelCellStyle),
+                    stringCell("Expected result", labelCellStyle),
+                    stringCell("Pass/fail", labelCellStyle),
+                    stringCell("Comment", labelCellStyle)
+            );
+
+            int stepNum = 1;
+            for (TestSheetDoclet.TestStep step : test.steps) {
+                table.addRow(
+                        stringCell(String.valueOf(stepNum++), centeredLabelCellStyle),
+                        stringCell(step.action, inputCellStyle),
+                        stringCell(step.expectedResults.isEmpty() ? "" : step.expectedResults.get(0), inputCellStyle),
+                        stringCell("", inputCellStyle)
+                );
+
+                if (step.expectedResults.size() > 1) {
+                    for (String expectedResult : step.expectedResults.subList(1, step.expectedResults.size())) {
+                        table.addRow(
+                                stringCell("", centeredLabelCellStyle),
+                                stringCell("", inputCellStyle),
+                                stringCell(expectedResult, inputCellStyle),
+                                stringCell("", inputCellStyle),
+                                stringCell("", inputCellStyle)
                         );
+
                     }
                 }
+            }
 
-                worksheet.appendChild(table);
-                workbook.appendChild(worksheet);
+            // Two empty rows as separators between tests
+            for (int i = 0; i < 2; i++) {
+                table.addRow(Cell.EMPTY, Cell.EMPTY, Cell.EMPTY, Cell.EMPTY, Cell.EMPTY);
             }
-            document.appendChild(workbook);
-            prettyPrint(document, filename);
-        } catch (Exception err) {
-            throw new RuntimeException(err);
         }
     }
 
-    private int getMaxColumnWidth(TestSheetDoclet.TestGroup testGroup, Function<TestSheetDoclet.TestStep, Integer> propertyMapping) {
-        return testGroup.tests.stream().mapToInt(test -> test.steps.stream().mapToInt(propertyMapping::apply).max().orElse(0)).max().orElse(0);
-    }
-
     private Node createStyleElement(Document document, Style style) {
         final var styleElement = document.createElementNS(ns, "Style");
         styleElement.setAttributeNS(ns, "ID", style.id);
@@ -206,54 +274,178 @@ class TestSheetWriter {
         return styleElement;
     }
 
-    private Element createRow(Document doc, Element... cells) {
-        final var row = doc.createElementNS(ns, "Row");
-        for (Element cell : cells) {
-            row.appendChild(cell);
+    private void writeStyle(XMLStreamWriter xml, Style style) throws XMLStreamException {
+        xml.writeStartElement("", "Style", ns);
+        xml.writeAttribute("ss", ns, "ID", style.id);
+
+        xml.writeEmptyElement("", "Font", ns);
+        if (style.boldText) {
+            xml.writeAttribute("ss", ns, "Bold", "1");
+        }
+        xml.writeAttribute("ss", ns, "FontName", "Calibri");
+        xml.writeAttribute("ss", ns, "Color", style.fontColor);
+
+        if (style.centeredText) {
+            xml.writeEmptyElement("", "Alignment", ns);
+            xml.writeAttribute("ss", ns, "Horizontal", "Center");
         }
-        return row;
+
+        if (style.backgroundColor != null) {
+            xml.writeEmptyElement("", "Interior", ns);
+            xml.writeAttribute("ss", ns, "Color", style.backgroundColor);
+            xml.writeAttribute("ss", ns, "Pattern", "Solid");
+        }
+
+        xml.writeEndElement();
     }
 
-    private Element createEmptyCell(Document doc) {
-        return doc.createElementNS(ns, "Cell");
+    private static Cell stringCell(String text, Style style) {
+        return stringCell(text, style, 1);
     }
 
-    private Element createStringCell(Document doc, String text, Style style) {
-        return createStringCell(doc, text, style, 1);
+    private static Cell stringCell(String text, Style style, int span) {
+        return new Cell(text, style, span);
     }
 
-    private Element createStringCell(Document doc, String text, Style style, int span) {
-        final var cell = doc.createElementNS(ns, "Cell");
-        if (span > 1) {
-            cell.setAttributeNS(ns, "MergeAcross", String.format("%d", span - 1));
+    private void prettyPrint(Document doc, String filename) throws TransformerException, IOException {
+        try (var outputStream = outputSink.open(filename)) {
+            // Required processing instructions
+            outputStream.write(XML_PROLOG.getBytes(UTF_8));
+
+            final TransformerFactory tf = TransformerFactory.newInstance();
+            final Transformer transformer = tf.newTransformer();
+            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+            transformer.setOutputProperty(OutputKeys.METHOD, "xml");
+            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+            transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+            transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
+            transformer.transform(new DOMSource(doc), new StreamResult(outputStream));
         }
-        final var data = doc.createElementNS(ns, "Data");
-        data.setAttributeNS(ns, "Type", "String");
-        data.setTextContent(text);
-        cell.setAttributeNS(ns, "StyleID", style.id);
-        cell.appendChild(data);
+    }
+
+    /**
+     * Receives the columns and rows of a worksheet table as they are laid out
+     */
+    private interface TableSink {
 
-        return cell;
+        void addColumn(String width);
+
+        void addRow(Cell... cells);
     }
 
-    private void prettyPrint(Document doc, String filename) throws TransformerException, IOException {
-        final var outputStream = new FileOutputStream(filename);
-        final var printStream = new PrintStream(outputStream);
-
-        // Required processing instructions
-        printStream.println("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>");
-        printStream.println("<?mso-application progid=\"Excel.Sheet\"?>");
-
-        final TransformerFactory tf = TransformerFactory.newInstance();
-        final Transformer transformer = tf.newTransformer();
-        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-        transformer.setOutputProperty(OutputKeys.METHOD, "xml");
-        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-        transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-        transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
-        transformer.transform(new DOMSource(doc), new StreamResult(new OutputStreamWriter(outputStream, UTF_8)));
-
-        outputStream.close();
+    /**
+     * Appends columns and rows to a {@code Table} element of a DOM document
+     */
+    private static class DomTable implements TableSink {
+
+        private final Document doc;
+        private final Element table;
+
+        DomTable(Document doc, Element table) {
+            this.doc = doc;
+            this.table = table;
+        }
+
+        @Override
+        public void addColumn(String width) {
+            final var column = doc.createElementNS(ns, "Column");
+            column.setAttributeNS(ns, "Width", width);
+            table.appendChild(column);
+        }
+
+        @Override
+        public void addRow(Cell... cells) {
+            final var row = doc.createElementNS(ns, "Row");
+            for (Cell cell : cells) {
+                row.appendChild(createCell(cell));
+            }
+            table.appendChild(row);
+        }
+
+        private Element createCell(Cell spec) {
+            final var cell = doc.createElementNS(ns, "Cell");
+            if (spec.style == null) {
+                return cell;
+            }
+            if (spec.span > 1) {
+                cell.setAttributeNS(ns, "MergeAcross", String.format("%d", spec.span - 1));
+            }
+            final var data = doc.createElementNS(ns, "Data");
+            data.setAttributeNS(ns, "Type", "String");
+            data.setTextContent(spec.text);
+            cell.setAttributeNS(ns, "StyleID", spec.style.id);
+            cell.appendChild(data);
+
+            return cell;
+        }
+    }
+
+    /**
+     * Writes columns and rows straight to an {@link XMLStreamWriter}
+     */
+    private static class StreamingTable implements TableSink {
+
+        private final XMLStreamWriter xml;
+
+        StreamingTable(XMLStreamWriter xml) {
+            this.xml = xml;
+        }
+
+        @Override
+        public void addColumn(String width) {
+            try {
+                xml.writeEmptyElement("", "Column", ns);
+                xml.writeAttribute("ss", ns, "Width", width);
+            } catch (XMLStreamException err) {
+                throw new RuntimeException(err);
+            }
+        }
+
+        @Override
+        public void addRow(Cell... cells) {
+            try {
+                xml.writeStartElement("", "Row", ns);
+                for (Cell cell : cells) {
+                    if (cell.style == null) {
+                        xml.writeEmptyElement("", "Cell", ns);
+                        continue;
+                    }
+                    xml.writeStartElement("", "Cell", ns);
+                    if (cell.span > 1) {
+                        xml.writeAttribute("ss", ns, "MergeAcross", String.valueOf(cell.span - 1));
+                    }
+                    xml.writeAttribute("ss", ns, "StyleID", cell.style.id);
+                    xml.writeStartElement("", "Data", ns);
+                    xml.writeAttribute("ss", ns, "Type", "String");
+                    if (cell.text != null) {
+                        xml.writeCharacters(cell.text);
+                    }
+                    xml.writeEndElement();
+                    xml.writeEndElement();
+                }
+                xml.writeEndElement();
+            } catch (XMLStreamException err) {
+                throw new RuntimeException(err);
+            }
+        }
+    }
+
+    /**
+     * A single cell of a row. Cells without a style are written as empty cells without data.
+     */
+    private static class Cell {
+
+        static final Cell EMPTY = new Cell(null, null, 1);
+
+        final String text;
+        final Style style;
+        final int span;
+
+        Cell(String text, Style style, int span) {
+            this.text = text;
+            this.style = style;
+            this.span = span;
+        }
     }
 
     static class Style {
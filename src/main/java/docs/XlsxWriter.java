@@ -0,0 +1,453 @@
+package docs;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Writes the test sheet as an Office Open XML (.xlsx) workbook. The worksheets use the same layout and styles as
+ * {@link JacksonWriter}, and every row is streamed into its zip entry as soon as it has been laid out. Only the shared
+ * strings table, which holds each distinct cell text once, is kept in memory until the end.
+ */
+class XlsxWriter {
+
+    private static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String REL_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String PACKAGE_REL_NS = "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final String CONTENT_TYPES_NS = "http://schemas.openxmlformats.org/package/2006/content-types";
+    private static final String XML_NS = "http://www.w3.org/XML/1998/namespace";
+    private static final String REL_TYPE = "http://schemas.openxmlformats.org/officeDocument/2006/relationships/";
+    private static final String CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.";
+    private static final int MAX_SHEET_NAME_LENGTH = 31;
+
+    private final TestSheetDoclet.TestGroups testGroups;
+    private final OutputSink outputSink;
+
+    XlsxWriter(TestSheetDoclet.TestGroups testGroups) {
+        this(testGroups, OutputSink.file());
+    }
+
+    XlsxWriter(TestSheetDoclet.TestGroups testGroups, OutputSink outputSink) {
+        this.testGroups = requireNonNull(testGroups);
+        this.outputSink = requireNonNull(outputSink);
+    }
+
+    /**
+     * @param filename The filename to write the generated workbook to, usually ending in {@code .xlsx}
+     */
+    void write(String filename) {
+        final var workbook = JacksonWriter.createWorkbook();
+        final var styleIndexes = new HashMap<String, Integer>();
+        for (JacksonWriter.Style style : workbook.styles.styleList) {
+            // Index 0 is the default cell format
+            styleIndexes.put(style.id, styleIndexes.size() + 1);
+        }
+
+        final var sharedStrings = new SharedStrings();
+        final List<String> sheetNames = new ArrayList<>();
+        final Set<String> usedSheetNames = new HashSet<>();
+
+        try (var zip = new ZipOutputStream(outputSink.open(filename))) {
+            for (TestSheetDoclet.TestGroup testGroup : testGroups.groups()) {
+                sheetNames.add(sheetName(JacksonWriter.worksheetName(testGroup), usedSheetNames));
+
+                final var xml = startPart(zip, String.format("xl/worksheets/sheet%d.xml", sheetNames.size()));
+                xml.writeStartElement("", "worksheet", MAIN_NS);
+                xml.writeDefaultNamespace(MAIN_NS);
+                final var table = new SheetTable(xml, styleIndexes, sharedStrings);
+                JacksonWriter.addTestGroup(testGroup, table);
+                table.finish();
+                xml.writeEndElement();
+                endPart(xml, zip);
+            }
+
+            var xml = startPart(zip, "xl/sharedStrings.xml");
+            writeSharedStrings(xml, sharedStrings);
+            endPart(xml, zip);
+
+            xml = startPart(zip, "xl/styles.xml");
+            writeStyles(xml, workbook.styles.styleList);
+            endPart(xml, zip);
+
+            xml = startPart(zip, "xl/workbook.xml");
+            writeWorkbook(xml, sheetNames);
+            endPart(xml, zip);
+
+            xml = startPart(zip, "xl/_rels/workbook.xml.rels");
+            writeWorkbookRelationships(xml, sheetNames.size());
+            endPart(xml, zip);
+
+            xml = startPart(zip, "_rels/.rels");
+            writePackageRelationships(xml);
+            endPart(xml, zip);
+
+            xml = startPart(zip, "[Content_Types].xml");
+            writeContentTypes(xml, sheetNames.size());
+            endPart(xml, zip);
+        } catch (Exception err) {
+            throw new RuntimeException(err);
+        }
+    }
+
+    private XMLStreamWriter startPart(ZipOutputStream zip, String name) throws XMLStreamException, IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        // Closing the stream writer leaves the zip stream open
+        final var xml = JacksonWriter.Shared.OUTPUT_FACTORY.createXMLStreamWriter(zip, "UTF-8");
+        xml.writeStartDocument("UTF-8", "1.0");
+        return xml;
+    }
+
+    private void endPart(XMLStreamWriter xml, ZipOutputStream zip) throws XMLStreamException, IOException {
+        xml.writeEndDocument();
+        xml.close();
+        zip.closeEntry();
+    }
+
+    /**
+     * Sheet names are limited to 31 characters, must not contain any of {@code []:*?/\} and must be unique
+     */
+    private static String sheetName(String name, Set<String> usedNames) {
+        final var sanitized = name.replaceAll("[\\[\\]:*?/\\\\]", "_");
+        var candidate = truncate(sanitized, MAX_SHEET_NAME_LENGTH);
+        for (int i = 2; !usedNames.add(candidate.toLowerCase()); i++) {
+            final var suffix = " (" + i + ")";
+            candidate = truncate(sanitized, MAX_SHEET_NAME_LENGTH - suffix.length()) + suffix;
+        }
+        return candidate;
+    }
+
+    private static String truncate(String text, int length) {
+        return text.length() <= length ? text : text.substring(0, length);
+    }
+
+    private void writeSharedStrings(XMLStreamWriter xml, SharedStrings sharedStrings) throws XMLStreamException {
+        xml.writeStartElement("", "sst", MAIN_NS);
+        xml.writeDefaultNamespace(MAIN_NS);
+        xml.writeAttribute("count", String.valueOf(sharedStrings.references));
+        xml.writeAttribute("uniqueCount", String.valueOf(sharedStrings.indexes.size()));
+        for (String text : sharedStrings.indexes.keySet()) {
+            xml.writeStartElement("", "si", MAIN_NS);
+            xml.writeStartElement("", "t", MAIN_NS);
+            if (!text.equals(text.strip())) {
+                xml.writeAttribute("xml", XML_NS, "space", "preserve");
+            }
+            xml.writeCharacters(text);
+            xml.writeEndElement();
+            xml.writeEndElement();
+        }
+        xml.writeEndElement();
+    }
+
+    /**
+     * Translates the Excel 2003 styles of {@link JacksonWriter} into fonts, fills and cell formats
+     */
+    private void writeStyles(XMLStreamWriter xml, List<JacksonWriter.Style> styles) throws XMLStreamException {
+        xml.writeStartElement("", "styleSheet", MAIN_NS);
+        xml.writeDefaultNamespace(MAIN_NS);
+
+        xml.writeStartElement("", "fonts", MAIN_NS);
+        xml.writeAttribute("count", String.valueOf(styles.size() + 1));
+        writeFont(xml, new JacksonWriter.Font(false, "#000000", "Calibri"));
+        for (JacksonWriter.Style style : styles) {
+            writeFont(xml, style.font != null ? style.font : new JacksonWriter.Font(false, "#000000", "Calibri"));
+        }
+        xml.writeEndElement();
+
+        // The first two fills are reserved by Excel
+        xml.writeStartElement("", "fills", MAIN_NS);
+        xml.writeAttribute("count", String.valueOf(styles.size() + 2));
+        writePatternFill(xml, "none", null);
+        writePatternFill(xml, "gray125", null);
+        for (JacksonWriter.Style style : styles) {
+            if (style.interior != null && "Solid".equals(style.interior.pattern)) {
+                writePatternFill(xml, "solid", style.interior.color);
+            } else {
+                writePatternFill(xml, "none", null);
+            }
+        }
+        xml.writeEndElement();
+
+        xml.writeStartElement("", "borders", MAIN_NS);
+        xml.writeAttribute("count", "1");
+        xml.writeEmptyElement("", "border", MAIN_NS);
+        xml.writeEndElement();
+
+        xml.writeStartElement("", "cellStyleXfs", MAIN_NS);
+        xml.writeAttribute("count", "1");
+        writeCellFormat(xml, 0, 0, null, false);
+        xml.writeEndElement();
+
+        xml.writeStartElement("", "cellXfs", MAIN_NS);
+        xml.writeAttribute("count", String.valueOf(styles.size() + 1));
+        writeCellFormat(xml, 0, 0, null, true);
+        for (int i = 0; i < styles.size(); i++) {
+            final var alignment = styles.get(i).alignment;
+            writeCellFormat(xml, i + 1, i + 2, alignment != null ? alignment.horizontal.toLowerCase() : null, true);
+        }
+        xml.writeEndElement();
+
+        xml.writeEndElement();
+    }
+
+    private static void writeFont(XMLStreamWriter xml, JacksonWriter.Font font) throws XMLStreamException {
+        xml.writeStartElement("", "font", MAIN_NS);
+        if ("1".equals(font.bold)) {
+            xml.writeEmptyElement("", "b", MAIN_NS);
+        }
+        xml.writeEmptyElement("", "color", MAIN_NS);
+        xml.writeAttribute("rgb", argb(font.color));
+        xml.writeEmptyElement("", "name", MAIN_NS);
+        xml.writeAttribute("val", font.fontName);
+        xml.writeEndElement();
+    }
+
+    private static void writePatternFill(XMLStreamWriter xml, String patternType, String color) throws XMLStreamException {
+        xml.writeStartElement("", "fill", MAIN_NS);
+        xml.writeStartElement("", "patternFill", MAIN_NS);
+        xml.writeAttribute("patternType", patternType);
+        if (color != null) {
+            xml.writeEmptyElement("", "fgColor", MAIN_NS);
+            xml.writeAttribute("rgb", argb(color));
+        }
+        xml.writeEndElement();
+        xml.writeEndElement();
+    }
+
+    private static void writeCellFormat(XMLStreamWriter xml, int fontId, int fillId, String horizontal, boolean cellFormat) throws XMLStreamException {
+        if (horizontal == null) {
+            xml.writeEmptyElement("", "xf", MAIN_NS);
+        } else {
+            xml.writeStartElement("", "xf", MAIN_NS);
+        }
+        xml.writeAttribute("numFmtId", "0");
+        xml.writeAttribute("fontId", String.valueOf(fontId));
+        xml.writeAttribute("fillId", String.valueOf(fillId));
+        xml.writeAttribute("borderId", "0");
+        if (cellFormat) {
+            xml.writeAttribute("xfId", "0");
+            xml.writeAttribute("applyFont", "1");
+            xml.writeAttribute("applyFill", "1");
+        }
+        if (horizontal != null) {
+            xml.writeAttribute("applyAlignment", "1");
+            xml.writeEmptyElement("", "alignment", MAIN_NS);
+            xml.writeAttribute("horizontal", horizontal);
+            xml.writeEndElement();
+        }
+    }
+
+    /**
+     * @param color A color in the {@code #RRGGBB} notation of Excel 2003 XML
+     */
+    private static String argb(String color) {
+        return "FF" + color.substring(1).toUpperCase();
+    }
+
+    private void writeWorkbook(XMLStreamWriter xml, List<String> sheetNames) throws XMLStreamException {
+        xml.writeStartElement("", "workbook", MAIN_NS);
+        xml.writeDefaultNamespace(MAIN_NS);
+        xml.writeNamespace("r", REL_NS);
+        xml.writeStartElement("", "sheets", MAIN_NS);
+        for (int i = 0; i < sheetNames.size(); i++) {
+            xml.writeEmptyElement("", "sheet", MAIN_NS);
+            xml.writeAttribute("name", sheetNames.get(i));
+            xml.writeAttribute("sheetId", String.valueOf(i + 1));
+            xml.writeAttribute("r", REL_NS, "id", "rId" + (i + 1));
+        }
+        xml.writeEndElement();
+        xml.writeEndElement();
+    }
+
+    private void writeWorkbookRelationships(XMLStreamWriter xml, int sheetCount) throws XMLStreamException {
+        xml.writeStartElement("", "Relationships", PACKAGE_REL_NS);
+        xml.writeDefaultNamespace(PACKAGE_REL_NS);
+        for (int i = 1; i <= sheetCount; i++) {
+            writeRelationship(xml, "rId" + i, "worksheet", String.format("worksheets/sheet%d.xml", i));
+        }
+        writeRelationship(xml, "rId" + (sheetCount + 1), "styles", "styles.xml");
+        writeRelationship(xml, "rId" + (sheetCount + 2), "sharedStrings", "sharedStrings.xml");
+        xml.writeEndElement();
+    }
+
+    private void writePackageRelationships(XMLStreamWriter xml) throws XMLStreamException {
+        xml.writeStartElement("", "Relationships", PACKAGE_REL_NS);
+        xml.writeDefaultNamespace(PACKAGE_REL_NS);
+        writeRelationship(xml, "rId1", "officeDocument", "xl/workbook.xml");
+        xml.writeEndElement();
+    }
+
+    private static void writeRelationship(XMLStreamWriter xml, String id, String type, String target) throws XMLStreamException {
+        xml.writeEmptyElement("", "Relationship", PACKAGE_REL_NS);
+        xml.writeAttribute("Id", id);
+        xml.writeAttribute("Type", REL_TYPE + type);
+        xml.writeAttribute("Target", target);
+    }
+
+    private void writeContentTypes(XMLStreamWriter xml, int sheetCount) throws XMLStreamException {
+        xml.writeStartElement("", "Types", CONTENT_TYPES_NS);
+        xml.writeDefaultNamespace(CONTENT_TYPES_NS);
+        xml.writeEmptyElement("", "Default", CONTENT_TYPES_NS);
+        xml.writeAttribute("Extension", "rels");
+        xml.writeAttribute("ContentType", "application/vnd.openxmlformats-package.relationships+xml");
+        xml.writeEmptyElement("", "Default", CONTENT_TYPES_NS);
+        xml.writeAttribute("Extension", "xml");
+        xml.writeAttribute("ContentType", "application/xml");
+        writeOverride(xml, "/xl/workbook.xml", "sheet.main+xml");
+        for (int i = 1; i <= sheetCount; i++) {
+            writeOverride(xml, String.format("/xl/worksheets/sheet%d.xml", i), "worksheet+xml");
+        }
+        writeOverride(xml, "/xl/styles.xml", "styles+xml");
+        writeOverride(xml, "/xl/sharedStrings.xml", "sharedStrings+xml");
+        xml.writeEndElement();
+    }
+
+    private static void writeOverride(XMLStreamWriter xml, String partName, String contentType) throws XMLStreamException {
+        xml.writeEmptyElement("", "Override", CONTENT_TYPES_NS);
+        xml.writeAttribute("PartName", partName);
+        xml.writeAttribute("ContentType", CONTENT_TYPE + contentType);
+    }
+
+    /**
+     * Each distinct cell text, in order of first use. Cells refer to their text by index.
+     */
+    private static class SharedStrings {
+
+        final Map<String, Integer> indexes = new LinkedHashMap<>();
+        long references = 0;
+
+        int indexOf(String text) {
+            references++;
+            return indexes.computeIfAbsent(text, key -> indexes.size());
+        }
+    }
+
+    /**
+     * Streams the columns and rows of a single worksheet. Merged ranges are collected and written after the sheet data.
+     */
+    private static class SheetTable implements JacksonWriter.TableSink {
+
+        private final XMLStreamWriter xml;
+        private final Map<String, Integer> styleIndexes;
+        private final SharedStrings sharedStrings;
+        private final ArrayList<String> mergedRanges = new ArrayList<>();
+        private int columns = 0;
+        private int rows = 0;
+
+        SheetTable(XMLStreamWriter xml, Map<String, Integer> styleIndexes, SharedStrings sharedStrings) {
+            this.xml = xml;
+            this.styleIndexes = styleIndexes;
+            this.sharedStrings = sharedStrings;
+        }
+
+        @Override
+        public void addColumn(int width) {
+            try {
+                if (columns == 0) {
+                    xml.writeStartElement("", "cols", MAIN_NS);
+                }
+                columns++;
+                xml.writeEmptyElement("", "col", MAIN_NS);
+                xml.writeAttribute("min", String.valueOf(columns));
+                xml.writeAttribute("max", String.valueOf(columns));
+                xml.writeAttribute("width", String.valueOf(toCharacterWidth(width)));
+                xml.writeAttribute("customWidth", "1");
+            } catch (XMLStreamException err) {
+                throw new RuntimeException(err);
+            }
+        }
+
+        @Override
+        public void reserve(int rows, int cells, int mergedCells) {
+            mergedRanges.ensureCapacity(mergedCells);
+        }
+
+        @Override
+        public void addRow(JacksonWriter.Cell... cells) {
+            try {
+                if (rows == 0) {
+                    startSheetData();
+                }
+                rows++;
+                xml.writeStartElement("", "row", MAIN_NS);
+                xml.writeAttribute("r", String.valueOf(rows));
+                int column = 0;
+                for (JacksonWriter.Cell cell : cells) {
+                    final var reference = cellReference(column, rows);
+                    xml.writeStartElement("", "c", MAIN_NS);
+                    xml.writeAttribute("r", reference);
+                    if (cell.styleId != null && styleIndexes.containsKey(cell.styleId)) {
+                        xml.writeAttribute("s", String.valueOf(styleIndexes.get(cell.styleId)));
+                    }
+                    xml.writeAttribute("t", "s");
+                    xml.writeStartElement("", "v", MAIN_NS);
+                    xml.writeCharacters(String.valueOf(sharedStrings.indexOf(cell.content == null ? "" : cell.content)));
+                    xml.writeEndElement();
+                    xml.writeEndElement();
+
+                    final int mergeAcross = cell.mergeAcross;
+                    if (mergeAcross > 0) {
+                        mergedRanges.add(reference + ":" + cellReference(column + mergeAcross, rows));
+                    }
+                    column += mergeAcross + 1;
+                }
+                xml.writeEndElement();
+            } catch (XMLStreamException err) {
+                throw new RuntimeException(err);
+            }
+        }
+
+        /**
+         * Closes the sheet data and writes the merged ranges
+         */
+        void finish() throws XMLStreamException {
+            if (rows == 0) {
+                startSheetData();
+            }
+            xml.writeEndElement();
+
+            if (!mergedRanges.isEmpty()) {
+                xml.writeStartElement("", "mergeCells", MAIN_NS);
+                xml.writeAttribute("count", String.valueOf(mergedRanges.size()));
+                for (String range : mergedRanges) {
+                    xml.writeEmptyElement("", "mergeCell", MAIN_NS);
+                    xml.writeAttribute("ref", range);
+                }
+                xml.writeEndElement();
+            }
+        }
+
+        private void startSheetData() throws XMLStreamException {
+            if (columns > 0) {
+                xml.writeEndElement();
+            }
+            xml.writeStartElement("", "sheetData", MAIN_NS);
+        }
+
+        /**
+         * Excel 2003 XML widths are in points, xlsx widths in characters of the default font
+         */
+        private static double toCharacterWidth(int points) {
+            final double pixels = points * 96.0 / 72.0;
+            return Math.round((pixels - 5) / 7.0 * 100) / 100.0;
+        }
+
+        private static String cellReference(int column, int row) {
+            final var reference = new StringBuilder();
+            for (int c = column + 1; c > 0; c = (c - 1) / 26) {
+                reference.insert(0, (char) ('A' + (c - 1) % 26));
+            }
+            return reference.append(row).toString();
+        }
+    }
+}
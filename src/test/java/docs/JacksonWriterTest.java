@@ -0,0 +1,203 @@
+package docs;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class JacksonWriterTest {
+
+    private static final String NS = "urn:schemas-microsoft-com:office:spreadsheet";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void streamingOutputShouldMatchTheObjectGraphOutput() throws Exception {
+        final var testGroups = createTestGroups();
+        final var graphFile = folder.newFile("graph.xml");
+        final var streamingFile = folder.newFile("streaming.xml");
+
+        new JacksonWriter(testGroups).write(graphFile.getPath());
+        new JacksonWriter(testGroups).writeStreaming(streamingFile.getPath());
+
+        final var graph = parse(graphFile);
+        final var streaming = parse(streamingFile);
+        assertThat(streaming.getElementsByTagNameNS(NS, "Worksheet").getLength()).isEqualTo(2);
+        assertThat(streaming.getElementsByTagNameNS(NS, "Row").getLength())
+                .isEqualTo(graph.getElementsByTagNameNS(NS, "Row").getLength());
+        assertThat(dataContents(streaming)).containsExactlyElementsOf(dataContents(graph));
+        assertThat(dataContents(streaming)).contains("Log in", "User exists");
+    }
+
+    static TestSheetDoclet.TestGroups createTestGroups() {
+        final var testGroups = new TestSheetDoclet.TestGroups();
+        for (int g = 1; g <= 2; g++) {
+            final var group = new TestSheetDoclet.TestGroup();
+            group.id = String.valueOf(g);
+            group.name = "Group " + g;
+            testGroups.addTestGroup("Group" + g, group);
+
+            final var test = new TestSheetDoclet.TestSpecification();
+            test.id = g + ".1";
+            test.name = "Login";
+            test.preconditions.add("User exists");
+            final var step = new TestSheetDoclet.TestStep();
+            step.action = "Log in";
+            test.steps.add(step);
+            testGroups.addTestSpecification("Group" + g, test);
+        }
+        return testGroups;
+    }
+
+    @Test
+    public void parallelOutputShouldBeIdenticalToTheStreamingOutput() throws Exception {
+        final var testGroups = createTestGroups();
+        final var streamingFile = folder.newFile("streaming.xml");
+        final var parallelFile = folder.newFile("parallel.xml");
+
+        new JacksonWriter(testGroups).writeStreaming(streamingFile.getPath());
+        new JacksonWriter(testGroups).writeParallel(parallelFile.getPath());
+
+        assertThat(Files.readAllBytes(parallelFile.toPath())).isEqualTo(Files.readAllBytes(streamingFile.toPath()));
+    }
+
+    @Test
+    public void layoutShouldMatchTheLaidOutTable() {
+        final var group = createTestGroups().getTestGroup("1").orElseThrow();
+        final var step = new TestSheetDoclet.TestStep();
+        step.action = "Log out of the application";
+        step.expectedResults.add("The login page is shown");
+        step.expectedResults.add("The session is ended");
+        final var test = new TestSheetDoclet.TestSpecification();
+        test.id = "1.2";
+        test.name = "Logout";
+        test.steps.add(step);
+        group.addTest(test);
+
+        final List<Integer> widths = new ArrayList<>();
+        final int[] reserved = new int[3];
+        final int[] added = new int[3];
+        JacksonWriter.addTestGroup(group, new JacksonWriter.TableSink() {
+            @Override
+            public void addColumn(int width) {
+                widths.add(width);
+            }
+
+            @Override
+            public void addRow(JacksonWriter.Cell... cells) {
+                added[0]++;
+                added[1] += cells.length;
+                added[2] += Arrays.stream(cells).filter(cell -> cell.mergeAcross > 0).count();
+            }
+
+            @Override
+            public void reserve(int rows, int cells, int mergedCells) {
+                reserved[0] = rows;
+                reserved[1] = cells;
+                reserved[2] = mergedCells;
+            }
+        });
+
+        assertThat(reserved).containsExactly(added);
+        assertThat(widths).containsExactly(100, 117, 104, 100, 200);
+    }
+
+    @Test
+    public void cellTextsAndStylesShouldBeInternedOncePerWorkbook() {
+        final var workbook = JacksonWriter.createWorkbook();
+        for (TestSheetDoclet.TestGroup group : createTestGroups().groups()) {
+            JacksonWriter.addTestGroup(group, workbook.addWorksheet(JacksonWriter.worksheetName(group)));
+        }
+
+        assertThat(workbook.sharedStrings).doesNotHaveDuplicates().contains("Test number", "Log in", "1.1", "2.1", "");
+        assertThat(workbook.intern("Log in")).isEqualTo(workbook.sharedStrings.indexOf("Log in"));
+        assertThat(workbook.intern(null)).isEqualTo(-1);
+
+        assertThat(workbook.styleIndex("labelCellStyle")).isEqualTo(1);
+        assertThat(workbook.styleIndex(null)).isEqualTo(-1);
+        assertThatThrownBy(() -> workbook.styleIndex("unknown")).isInstanceOf(IllegalArgumentException.class);
+
+        // Both worksheets refer to the same entries for the labels they share
+        final var first = workbook.worksheets.get(0).table;
+        final var second = workbook.worksheets.get(1).table;
+        assertThat(first.cellStrings[0]).isEqualTo(second.cellStrings[0]).isEqualTo(workbook.intern("Test number"));
+        assertThat(first.cellStyles[0]).isEqualTo(second.cellStyles[0]).isEqualTo(1);
+    }
+
+    @Test
+    public void tableShouldStoreEveryRowWithItsCells() throws Exception {
+        final var testGroups = new TestSheetDoclet.TestGroups();
+        final var group = new TestSheetDoclet.TestGroup();
+        group.id = "1";
+        group.name = "Logout";
+        testGroups.addTestGroup("Logout", group);
+        final var test = new TestSheetDoclet.TestSpecification();
+        test.id = "1.1";
+        test.name = "Logout";
+        final var logOut = new TestSheetDoclet.TestStep();
+        logOut.action = "Log out";
+        logOut.expectedResults.add("The login page is shown");
+        logOut.expectedResults.add("The session is ended");
+        final var wait = new TestSheetDoclet.TestStep();
+        wait.action = "Wait";
+        test.steps.add(logOut);
+        test.steps.add(wait);
+        testGroups.addTestSpecification("Logout", test);
+
+        final var workbook = JacksonWriter.createWorkbook();
+        final var worksheet = workbook.addWorksheet("Logout");
+        JacksonWriter.addTestGroup(group, worksheet);
+        final var table = worksheet.table;
+
+        // Id, name, precondition header, step header, two steps, an additional expected result and two separators
+        assertThat(table.rowCount).isEqualTo(9);
+        assertThat(Arrays.copyOf(table.rowOffsets, table.rowCount + 1)).containsExactly(0, 4, 8, 10, 15, 19, 24, 28, 28, 28);
+        assertThat(table.cellCount).isEqualTo(28);
+        assertThat(rowTexts(table, 4)).containsExactly("1", "Log out", "The login page is shown", "");
+        assertThat(rowTexts(table, 5)).containsExactly("", "", "The session is ended", "", "");
+        assertThat(rowTexts(table, 6)).containsExactly("2", "Wait", "", "");
+        assertThat(Arrays.copyOfRange(table.cellMerges, 0, 4)).containsExactly(0, 2, 0, 2);
+
+        final var graphFile = folder.newFile("graph.xml");
+        final var streamingFile = folder.newFile("streaming.xml");
+        new JacksonWriter(testGroups).write(graphFile.getPath());
+        new JacksonWriter(testGroups).writeStreaming(streamingFile.getPath());
+        final var graph = parse(graphFile);
+        assertThat(graph.getElementsByTagNameNS(NS, "Row").getLength()).isEqualTo(9);
+        assertThat(dataContents(graph)).containsExactlyElementsOf(dataContents(parse(streamingFile)));
+    }
+
+    private static List<String> rowTexts(JacksonWriter.Table table, int row) {
+        final List<String> texts = new ArrayList<>();
+        for (int i = table.rowOffsets[row]; i < table.rowOffsets[row + 1]; i++) {
+            texts.add(table.workbook.sharedStrings.get(table.cellStrings[i]));
+        }
+        return texts;
+    }
+
+    private static Document parse(File file) throws Exception {
+        final var dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        return dbf.newDocumentBuilder().parse(file);
+    }
+
+    private static List<String> dataContents(Document document) {
+        final var nodes = document.getElementsByTagNameNS(NS, "Data");
+        final var contents = new ArrayList<String>();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            contents.add(nodes.item(i).getTextContent());
+        }
+        return contents;
+    }
+}
@@ -0,0 +1,31 @@
+package docs;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ModelSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sheetRenderedFromTheSnapshotShouldBeIdenticalToTheOriginal() throws Exception {
+        final var testGroups = JacksonWriterTest.createTestGroups();
+        final var snapshot = folder.newFile("tests.snapshot").toPath();
+        final var originalFile = folder.newFile("original.xml");
+        final var restoredFile = folder.newFile("restored.xml");
+
+        ModelSnapshot.write(testGroups, snapshot);
+        final var restored = ModelSnapshot.read(snapshot);
+
+        assertThat(restored.groups()).extracting(group -> group.id).containsExactly("1", "2");
+        new JacksonWriter(testGroups).writeStreaming(originalFile.getPath());
+        new JacksonWriter(restored).writeStreaming(restoredFile.getPath());
+        assertThat(Files.readAllBytes(restoredFile.toPath())).isEqualTo(Files.readAllBytes(originalFile.toPath()));
+    }
+}
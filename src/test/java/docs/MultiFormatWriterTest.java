@@ -0,0 +1,43 @@
+package docs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MultiFormatWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldRenderAllFormatsInOnePass() throws Exception {
+        final var testGroups = JacksonWriterTest.createTestGroups();
+        final var step = testGroups.getTestGroup("1").orElseThrow().tests.get(0).steps.get(0);
+        step.expectedResults.add("Greeted with \"Hello, user\"");
+        final var streamingFile = folder.newFile("streaming.xml");
+        final Map<String, String> files = new LinkedHashMap<>();
+        files.put("xml", folder.newFile("sheet.xml").getPath());
+        files.put("json", folder.newFile("sheet.json").getPath());
+        files.put("csv", folder.newFile("sheet.csv").getPath());
+
+        new MultiFormatWriter(testGroups, OutputSink.file()).write(files);
+        new JacksonWriter(testGroups).writeStreaming(streamingFile.getPath());
+
+        assertThat(Files.readAllBytes(folder.getRoot().toPath().resolve("sheet.xml")))
+                .isEqualTo(Files.readAllBytes(streamingFile.toPath()));
+        final var json = new ObjectMapper().readTree(folder.getRoot().toPath().resolve("sheet.json").toFile());
+        assertThat(json.at("/groups/1/tests/0/id").asText()).isEqualTo("2.1");
+        assertThat(json.at("/groups/0/tests/0/steps/0/expectedResults/0").asText()).isEqualTo("Greeted with \"Hello, user\"");
+        assertThat(Files.readAllLines(folder.getRoot().toPath().resolve("sheet.csv"))).containsExactly(
+                "Group id,Group name,Test id,Test name,Preconditions,Step,Action,Expected results",
+                "1,Group 1,1.1,Login,User exists,1,Log in,\"Greeted with \"\"Hello, user\"\"\"",
+                "2,Group 2,2.1,Login,User exists,1,Log in,");
+    }
+}
@@ -0,0 +1,42 @@
+package docs;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OrderedFragmentsTest {
+
+    @Test
+    public void fragmentsShouldBeWrittenInOrderWithABoundedWindow() throws Exception {
+        final List<Integer> items = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+        final var written = new AtomicInteger();
+        final var maxAhead = new AtomicInteger();
+        final var document = new ByteArrayOutputStream();
+        final var out = new OutputStream() {
+            @Override
+            public void write(int b) {
+                document.write(b);
+                written.incrementAndGet();
+            }
+        };
+
+        OrderedFragments.write(out, items, (item, fragment) -> {
+            maxAhead.accumulateAndGet(item - written.get(), Math::max);
+            fragment.write(item);
+        }, 4);
+
+        assertThat(document.toByteArray()).hasSize(100);
+        for (int i = 0; i < 100; i++) {
+            assertThat(document.toByteArray()[i]).isEqualTo((byte) i);
+        }
+        // A fragment is only submitted once all but the last three before it have been written
+        assertThat(maxAhead.get()).isLessThan(4);
+    }
+}
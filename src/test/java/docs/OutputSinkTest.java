@@ -0,0 +1,54 @@
+package docs;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.FileInputStream;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class OutputSinkTest {
+
+    private static final String CONTENT = "<Workbook>" + "<Row/>".repeat(100) + "</Workbook>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void channelSinkShouldWriteEverythingThroughASmallBuffer() throws Exception {
+        final var file = folder.newFile("sheet.xml");
+
+        try (var out = OutputSink.channel(16).open(file.getPath())) {
+            out.write('<');
+            out.write(CONTENT.substring(1, 10).getBytes(UTF_8));
+            out.write(CONTENT.substring(10).getBytes(UTF_8));
+        }
+
+        assertThat(Files.readString(file.toPath())).isEqualTo(CONTENT);
+    }
+
+    @Test
+    public void channelSinkShouldRejectAnEmptyBuffer() {
+        assertThatThrownBy(() -> OutputSink.channel(0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> OutputSink.channel(-1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void gzipSinkShouldCompress() throws Exception {
+        final var file = folder.newFile("sheet.xml.gz");
+
+        try (var out = OutputSink.gzip(OutputSink.file()).open(file.getPath())) {
+            out.write(CONTENT.getBytes(UTF_8));
+        }
+
+        try (var in = new GZIPInputStream(new FileInputStream(file))) {
+            assertThat(new String(in.readAllBytes(), UTF_8)).isEqualTo(CONTENT);
+        }
+        assertThat(file.length()).isLessThan(CONTENT.length());
+    }
+}
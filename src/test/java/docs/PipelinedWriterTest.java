@@ -0,0 +1,49 @@
+package docs;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PipelinedWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test(timeout = 30_000)
+    public void shouldWriteTheGroupsInTheOrderTheyAreHandedOver() throws Exception {
+        final var testGroups = JacksonWriterTest.createTestGroups();
+        final var pipelinedFile = folder.newFile("pipelined.xml");
+        final var streamingFile = folder.newFile("streaming.xml");
+
+        try (var writer = new PipelinedWriter(Map.of("xml", pipelinedFile.getPath()), OutputSink.file(), 1)) {
+            testGroups.groups().forEach(writer::put);
+            writer.finish();
+        }
+        new JacksonWriter(testGroups).writeStreaming(streamingFile.getPath());
+
+        assertThat(Files.readAllBytes(pipelinedFile.toPath())).isEqualTo(Files.readAllBytes(streamingFile.toPath()));
+    }
+
+    @Test(timeout = 30_000)
+    public void shouldFailTheExtractionWhenWritingFails() {
+        final OutputSink failingSink = filename -> {
+            throw new IOException("Disk full");
+        };
+
+        try (var writer = new PipelinedWriter(Map.of("csv", "sheet.csv"), failingSink, 1)) {
+            assertThatThrownBy(() -> {
+                for (TestSheetDoclet.TestGroup group : JacksonWriterTest.createTestGroups().groups()) {
+                    writer.put(group);
+                }
+                writer.finish();
+            }).hasMessage("Writing the sheet failed").hasRootCauseInstanceOf(IOException.class);
+        }
+    }
+}
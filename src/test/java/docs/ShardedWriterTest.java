@@ -0,0 +1,30 @@
+package docs;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShardedWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldWriteOneSheetPerShardAndAManifest() throws Exception {
+        final var base = folder.getRoot().toPath().resolve("sheet").toString();
+        final var manifest = folder.getRoot().toPath().resolve("manifest.json");
+
+        final var files = new ShardedWriter(JacksonWriterTest.createTestGroups(), 1)
+                .write((shard, filename) -> new JacksonWriter(shard).write(filename), suffix -> base + suffix + ".xml", manifest.toString());
+
+        assertThat(files).containsExactly(base + "-1.xml", base + "-2.xml");
+        assertThat(Files.readString(Paths.get(files.get(0)))).contains("1 - Group 1").doesNotContain("2 - Group 2");
+        assertThat(Files.readString(Paths.get(files.get(1)))).contains("2 - Group 2").doesNotContain("1 - Group 1");
+        assertThat(Files.readString(manifest)).contains("\"groups\" : [ \"1\" ]", "\"groups\" : [ \"2\" ]");
+    }
+}
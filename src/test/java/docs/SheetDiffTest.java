@@ -0,0 +1,41 @@
+package docs;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SheetDiffTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldOnlyHoldTheTestsChangedSinceTheStoredManifest() {
+        final var diff = new SheetDiff(folder.getRoot().toPath().resolve("manifest.json"));
+
+        final var initial = diff.compare(JacksonWriterTest.createTestGroups());
+        assertThat(initial.added).isEqualTo(2);
+        diff.store(initial);
+        assertThat(diff.compare(JacksonWriterTest.createTestGroups()).isEmpty()).isTrue();
+
+        final var testGroups = JacksonWriterTest.createTestGroups();
+        final var first = testGroups.getTestGroup("1").orElseThrow();
+        first.tests.get(0).steps.get(0).expectedResults.add("The start page is shown");
+        final var added = new TestSheetDoclet.TestSpecification();
+        added.id = "1.2";
+        added.name = "Logout";
+        first.addTest(added);
+        testGroups.getTestGroup("2").orElseThrow().clearTests();
+
+        final var changes = diff.compare(testGroups);
+        assertThat(changes.added).isEqualTo(1);
+        assertThat(changes.changed).isEqualTo(1);
+        assertThat(changes.removed).isEqualTo(1);
+        assertThat(changes.testGroups.getTestGroup("1").orElseThrow().tests).extracting(test -> test.name)
+                .containsExactly("Changed: Login", "Added: Logout");
+        assertThat(changes.testGroups.getTestGroup("2").orElseThrow().tests).extracting(test -> test.name)
+                .containsExactly("Removed: Login");
+    }
+}
@@ -0,0 +1,89 @@
+package docs;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SourceScannerTest {
+
+    private static final String SOURCE = String.join("\n",
+            "package acme.tests;",
+            "",
+            "import java.util.List;",
+            "",
+            "/**",
+            " * Login tests",
+            " *",
+            " * @id 1",
+            " * @name Login",
+            " */",
+            "@SuppressWarnings(\"unused\")",
+            "public class LoginTest {",
+            "    /** @id not a test */",
+            "    private String braces = \"{ } (\";",
+            "",
+            "    /**",
+            "     * @id 1.1",
+            "     * @name Valid",
+            "     *   password",
+            "     * @step Log in",
+            "     * @expectedResult Logged in",
+            "     */",
+            "    @Deprecated(since = \"1\")",
+            "    public Map<String, List<String>> valid(char c) {",
+            "        Runnable r = new Runnable() {",
+            "            /** @id 9.9 */",
+            "            public void run() { char brace = '}'; }",
+            "        };",
+            "        return null;",
+            "    }",
+            "",
+            "    enum Kind {",
+            "        /** @id constant */",
+            "        A(\"a\"), B(\"b\");",
+            "",
+            "        Kind(String name) {",
+            "        }",
+            "    }",
+            "",
+            "    /**",
+            "     * @id 1.2",
+            "     */",
+            "    public void record() {",
+            "    }",
+            "}",
+            "");
+
+    @Test
+    public void shouldAttributeDocCommentsToTypesAndExecutables() {
+        final var docs = SourceScanner.scan(ByteBuffer.wrap(SOURCE.getBytes(UTF_8)));
+
+        assertThat(docs.stream().map(doc -> doc.typeName).collect(Collectors.toList()))
+                .containsExactly("acme.tests.LoginTest", "acme.tests.LoginTest", "acme.tests.LoginTest");
+
+        assertThat(docs.get(0).testGroup.id).isEqualTo("1");
+        assertThat(docs.get(0).testGroup.name).isEqualTo("Login");
+
+        final var valid = docs.get(1).testSpecification;
+        assertThat(valid.id).isEqualTo("1.1");
+        assertThat(valid.name).isEqualTo("Valid   password");
+        assertThat(valid.steps).hasSize(1);
+        assertThat(valid.steps.get(0).action).isEqualTo("Log in");
+        assertThat(valid.steps.get(0).expectedResults).containsExactly("Logged in");
+
+        assertThat(docs.get(2).testSpecification.id).isEqualTo("1.2");
+    }
+
+    @Test
+    public void blockTagsShouldStartAtTheStartOfALine() {
+        final List<String[]> tags = SourceScanner.blockTags(" Mail a@b.c\n * @step Send\n *  {@code mail} @now\n ");
+
+        assertThat(tags).hasSize(1);
+        assertThat(tags.get(0)).containsExactly("step", "Send\n  {@code mail} @now");
+    }
+}
@@ -0,0 +1,52 @@
+package docs;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SourceWatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test(timeout = 30_000)
+    public void shouldRescanChangedFiles() throws Exception {
+        final var root = folder.getRoot().toPath();
+        write(root.resolve("LoginTest.java"), "1", "Login");
+        write(root.resolve("LogoutTest.java"), "2", "Logout");
+
+        try (var watcher = new SourceWatcher(List.of(root))) {
+            assertThat(groupNames(watcher)).containsExactly("Login", "Logout");
+
+            write(root.resolve("LoginTest.java"), "1", "Sign in");
+            watcher.awaitChanges();
+
+            assertThat(groupNames(watcher)).containsExactly("Sign in", "Logout");
+            assertThat(watcher.testGroups().getTestGroup("1").get().tests).hasSize(1);
+        }
+    }
+
+    private static List<String> groupNames(SourceWatcher watcher) {
+        return watcher.testGroups().groups().stream().map(group -> group.name).collect(Collectors.toList());
+    }
+
+    private static void write(Path file, String id, String name) throws Exception {
+        Files.writeString(file, String.join("\n",
+                "/**",
+                " * @id " + id,
+                " * @name " + name,
+                " */",
+                "class " + file.getFileName().toString().replace(".java", "") + " {",
+                "    /** @id " + id + ".1 */",
+                "    void test() {",
+                "    }",
+                "}"));
+    }
+}
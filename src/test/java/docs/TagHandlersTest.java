@@ -0,0 +1,131 @@
+package docs;
+
+import com.sun.source.doctree.DocTree;
+import com.sun.source.doctree.DocTreeVisitor;
+import com.sun.source.doctree.TextTree;
+import com.sun.source.doctree.UnknownBlockTagTree;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class TagHandlersTest {
+
+    @Test
+    public void contentShouldBeJoinedWithoutLineBreaks() {
+        assertThat(TagHandlers.normalise(List.of(text("Log in with a\n   valid"), text("password\n")))).isEqualTo("Log in with a   valid password");
+        assertThat(TagHandlers.normalise(List.of())).isEmpty();
+    }
+
+    @Test
+    public void tagsShouldBeDispatchedToTheirHandlersInOrder() {
+        final List<String> handled = new ArrayList<>();
+        final var handlers = new TagHandlers<List<String>>()
+                .register("id", (target, content) -> target.add("id:" + content))
+                .register("step", (target, content) -> target.add("step:" + content));
+
+        handlers.apply(handled, List.of(tag("step", text("Open\n the page")), tag("id", text("42")), tag("step", text("Log in"))));
+        handlers.apply(handled, "id", "43\n");
+
+        assertThat(handled).containsExactly("step:Open the page", "id:42", "step:Log in", "id:43");
+    }
+
+    @Test
+    public void unregisteredTagsShouldBeSkippedWithoutNormalising() {
+        final List<String> handled = new ArrayList<>();
+        final var handlers = new TagHandlers<List<String>>()
+                .register("id", (target, content) -> target.add(content));
+
+        handlers.apply(handled, List.of(tag("author", null), tag("id", text("42")), text("not a block tag")));
+        handlers.apply(handled, "author", null);
+
+        assertThat(handled).containsExactly("42");
+    }
+
+    @Test
+    public void expectedResultsShouldBelongToTheLastStep() {
+        final var test = new TestSheetDoclet.TestSpecification();
+        TestSheetDoclet.METHOD_TAGS.apply(test, List.of(
+                tag("step", text("Open the page")),
+                tag("expectedResult", text("The page is shown")),
+                tag("step", text("Log in")),
+                tag("expectedResult", text("The user is logged in")),
+                tag("expectedResult", text("The menu is shown"))));
+
+        assertThat(test.steps)
+                .extracting(step -> step.action, step -> step.expectedResults)
+                .containsExactly(
+                        tuple("Open the page", List.of("The page is shown")),
+                        tuple("Log in", List.of("The user is logged in", "The menu is shown")));
+        assertThat(test.strayExpectedResults).isEmpty();
+    }
+
+    @Test
+    public void expectedResultsBeforeAnyStepShouldBeKeptAside() {
+        final var test = new TestSheetDoclet.TestSpecification();
+        TestSheetDoclet.METHOD_TAGS.apply(test, List.of(
+                tag("expectedResult", text("The page is shown")),
+                tag("step", text("Log in"))));
+
+        assertThat(test.strayExpectedResults).containsExactly("The page is shown");
+        assertThat(test.steps).hasSize(1);
+        assertThat(test.steps.get(0).expectedResults).isEmpty();
+    }
+
+    /**
+     * @param content The single content node, or null for a tag whose content must never be read
+     */
+    static UnknownBlockTagTree tag(String tagName, DocTree content) {
+        return new UnknownBlockTagTree() {
+            @Override
+            public String getTagName() {
+                return tagName;
+            }
+
+            @Override
+            public List<? extends DocTree> getContent() {
+                if (content == null) {
+                    throw new AssertionError("Content of @" + tagName + " should not be read");
+                }
+                return List.of(content);
+            }
+
+            @Override
+            public Kind getKind() {
+                return Kind.UNKNOWN_BLOCK_TAG;
+            }
+
+            @Override
+            public <R, D> R accept(DocTreeVisitor<R, D> visitor, D data) {
+                return visitor.visitUnknownBlockTag(this, data);
+            }
+        };
+    }
+
+    static TextTree text(String body) {
+        return new TextTree() {
+            @Override
+            public String getBody() {
+                return body;
+            }
+
+            @Override
+            public Kind getKind() {
+                return Kind.TEXT;
+            }
+
+            @Override
+            public <R, D> R accept(DocTreeVisitor<R, D> visitor, D data) {
+                return visitor.visitText(this, data);
+            }
+
+            @Override
+            public String toString() {
+                return body;
+            }
+        };
+    }
+}
@@ -0,0 +1,70 @@
+package docs;
+
+import org.junit.Test;
+
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestGroupsTest {
+
+    @Test
+    public void groupsShouldBeOrderedNumericallyBeforeNonNumericIds() {
+        final var testGroups = new TestSheetDoclet.TestGroups();
+        testGroups.addTestGroup("a.Ten", group("10"));
+        testGroups.addTestGroup("a.Beta", group("beta"));
+        testGroups.addTestGroup("a.Two", group("2"));
+        testGroups.addTestGroup("a.Alpha", group("alpha"));
+        testGroups.addTestGroup("a.OtherTwo", group("2"));
+
+        assertThat(testGroups.groups().stream().map(group -> group.id).collect(Collectors.toList()))
+                .containsExactly("2", "2", "10", "alpha", "beta");
+        assertThat(testGroups.getTestGroup("10")).isNotEmpty();
+        assertThat(testGroups.getTestGroup("11")).isEmpty();
+    }
+
+    @Test
+    public void specificationsShouldBeAttachedToTheGroupOfTheirType() {
+        final var testGroups = new TestSheetDoclet.TestGroups();
+        testGroups.addTestSpecification("a.Second", specification("2.1"));
+        testGroups.addTestGroup("a.First", group("1"));
+        testGroups.addTestGroup("a.Second", group("2"));
+        testGroups.addTestSpecification("a.First", specification("1.1"));
+        testGroups.addTestSpecification("a.Second", specification("2.2"));
+        testGroups.addTestSpecification("a.Untagged", specification("3.1"));
+
+        assertThat(testGroups.getTestGroup("1").orElseThrow().tests).extracting(test -> test.id).containsExactly("1.1");
+        assertThat(testGroups.getTestGroup("2").orElseThrow().tests).extracting(test -> test.id).containsExactly("2.1", "2.2");
+        assertThat(testGroups.orphans()).containsOnlyKeys("a.Untagged");
+    }
+
+    @Test
+    public void mergedGroupsShouldBeOrderedAcrossSources() {
+        final var first = new TestSheetDoclet.TestGroups();
+        first.addTestGroup("a.Three", group("3"));
+        first.addTestSpecification("a.Untagged", specification("9.1"));
+        final var second = new TestSheetDoclet.TestGroups();
+        second.addTestGroup("b.One", group("1"));
+        second.addTestGroup("b.Three", group("3"));
+
+        final var merged = new TestSheetDoclet.TestGroups();
+        merged.addAll(first);
+        merged.addAll(second);
+
+        assertThat(merged.groups()).extracting(group -> group.id).containsExactly("1", "3", "3");
+        assertThat(merged.groups().stream().skip(1).findFirst().orElseThrow()).isSameAs(first.getTestGroup("3").orElseThrow());
+        assertThat(merged.orphans()).containsOnlyKeys("a.Untagged");
+    }
+
+    private static TestSheetDoclet.TestGroup group(String id) {
+        final var group = new TestSheetDoclet.TestGroup();
+        group.id = id;
+        return group;
+    }
+
+    private static TestSheetDoclet.TestSpecification specification(String id) {
+        final var test = new TestSheetDoclet.TestSpecification();
+        test.id = id;
+        return test;
+    }
+}
@@ -0,0 +1,262 @@
+package docs;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.DiagnosticListener;
+import javax.tools.DocumentationTool;
+import javax.tools.JavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestSheetDocletTest {
+
+    private static final String LOGIN_TEST = String.join("\n",
+            "package acme;",
+            "",
+            "/**",
+            " * @id 1",
+            " * @name Login",
+            " */",
+            "public class LoginTest {",
+            "    /**",
+            " * @id 1.1",
+            " * @name Constructor",
+            " */",
+            "    LoginTest() {",
+            "    }",
+            "",
+            "    /**",
+            " * @id 1.2",
+            " * @name Public method",
+            " * @step Log in",
+            " */",
+            "    public void login() {",
+            "    }",
+            "",
+            "    /**",
+            " * @id 1.3",
+            " * @name Private method",
+            " */",
+            "    private void logout() {",
+            "    }",
+            "",
+            "    /** @id not a test */",
+            "    private String user;",
+            "",
+            "    /**",
+            " * @id 2",
+            " * @name Nested",
+            " */",
+            "    static class Nested {",
+            "        /**",
+            " * @id 2.1",
+            " * @name Nested constructor",
+            " */",
+            "        Nested(String user) {",
+            "        }",
+            "",
+            "        /**",
+            " * @id 2.2",
+            " * @name Nested method",
+            " */",
+            "        void reset() {",
+            "        }",
+            "    }",
+            "}",
+            "");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void everyTaggedMethodAndConstructorShouldBeExtracted() throws Exception {
+        final var source = writeSource();
+
+        final var testGroups = extract(source);
+
+        assertThat(testIds(testGroups)).containsExactly("1: 1.1, 1.2, 1.3", "2: 2.1, 2.2");
+        assertThat(testGroups.getTestGroup("1").orElseThrow().tests.get(1).steps).hasSize(1);
+    }
+
+    @Test
+    public void recordsShouldBeReadLikeClasses() throws Exception {
+        final var source = writeSource("RecordTest.java", String.join("\n",
+                "package acme;",
+                "",
+                "/**",
+                " * @id 5",
+                " * @name Record",
+                " */",
+                "public record RecordTest(String user) {",
+                "    /**",
+                " * @id 5.1",
+                " * @name Record method",
+                " */",
+                "    public void login() {",
+                "    }",
+                "}",
+                ""));
+
+        assertThat(testIds(extract(source))).containsExactly("5: 5.1");
+        assertThat(testIds(SourceScanner.scan(List.of(folder.getRoot().toPath())))).containsExactly("5: 5.1");
+    }
+
+    @Test
+    public void sourceScannerShouldOnlyDifferForInlineTagsAndEntities() throws Exception {
+        final var source = writeSource();
+        writeSource("MarkupTest.java", String.join("\n",
+                "package acme;",
+                "",
+                "/**",
+                " * @id 4",
+                " * @name Alpha &amp; beta",
+                " */",
+                "public class MarkupTest {",
+                "    /**",
+                " * @id 4.1",
+                " * @name Markup",
+                " * @step Do {@code x} thing",
+                " */",
+                "    public void markup() {",
+                "    }",
+                "}",
+                ""));
+
+        final var doclet = extract(source);
+        final var scanned = SourceScanner.scan(List.of(folder.getRoot().toPath()));
+
+        assertThat(testIds(scanned)).isEqualTo(testIds(doclet));
+        assertThat(scanned.getTestGroup("1").orElseThrow().tests).extracting(test -> test.name)
+                .isEqualTo(doclet.getTestGroup("1").orElseThrow().tests.stream().map(test -> test.name).collect(Collectors.toList()));
+
+        assertThat(doclet.getTestGroup("4").orElseThrow().name).isEqualTo("Alpha  &amp;  beta");
+        assertThat(scanned.getTestGroup("4").orElseThrow().name).isEqualTo("Alpha &amp; beta");
+        assertThat(doclet.getTestGroup("4").orElseThrow().tests.get(0).steps.get(0).action).isEqualTo("Do  {@code x}  thing");
+        assertThat(scanned.getTestGroup("4").orElseThrow().tests.get(0).steps.get(0).action).isEqualTo("Do {@code x} thing");
+    }
+
+    @Test
+    public void cachedEntriesShouldOnlyBeReusedForTheSameTaggedKinds() throws Exception {
+        final var source = writeSource();
+        final var cache = folder.newFolder("cache").getPath();
+
+        final var classesOnly = extract(source, "--tagged-kinds", "class", "--cache", cache);
+        final var defaultKinds = extract(source, "--cache", cache);
+        final var cached = extract(source, "--cache", cache);
+
+        assertThat(testIds(classesOnly)).containsExactly("1: ", "2: ");
+        assertThat(testIds(defaultKinds)).containsExactly("1: 1.1, 1.2, 1.3", "2: 2.1, 2.2");
+        assertThat(testIds(cached)).isEqualTo(testIds(defaultKinds));
+        assertThat(folder.getRoot().toPath().resolve("cache").toFile().list()).hasSize(2);
+    }
+
+    @Test
+    public void expectedResultsBeforeAnyStepShouldBeReportedOnEveryRun() throws Exception {
+        final var source = writeSource("StrayTest.java", String.join("\n",
+                "package acme;",
+                "",
+                "/**",
+                " * @id 3",
+                " * @name Stray",
+                " */",
+                "public class StrayTest {",
+                "    /**",
+                " * @id 3.1",
+                " * @name Early result",
+                " * @expectedResult Shown too early",
+                " * @step Log in",
+                " */",
+                "    public void early() {",
+                "    }",
+                "}",
+                ""));
+        final var cache = folder.newFolder("cache").getPath();
+
+        final var cold = new DiagnosticCollector<JavaFileObject>();
+        final var warm = new DiagnosticCollector<JavaFileObject>();
+        extract(source, cold, "--cache", cache);
+        final var cached = extract(source, warm, "--cache", cache);
+
+        assertThat(warnings(cold)).containsExactly(
+                "Expected result \"Shown too early\" of test 3.1 in acme.StrayTest is skipped, it comes before any step");
+        assertThat(warnings(warm)).isEqualTo(warnings(cold));
+        assertThat(cached.getTestGroup("3").orElseThrow().tests.get(0).steps.get(0).expectedResults).isEmpty();
+    }
+
+    @Test
+    public void diffShouldNotBeCombinedWithShards() throws Exception {
+        final var source = writeSource();
+        final var manifest = folder.getRoot().toPath().resolve("manifest.json");
+        final var diagnostics = new DiagnosticCollector<JavaFileObject>();
+
+        assertThat(javadoc(source, diagnostics, List.of("--diff", manifest.toString(), "--shard", "1"))).isFalse();
+
+        assertThat(diagnostics.getDiagnostics()).extracting(diagnostic -> diagnostic.getMessage(Locale.ROOT))
+                .contains("A diff is written as a single sheet of the changed tests, and cannot be combined with --shard");
+        assertThat(manifest).doesNotExist();
+    }
+
+    private File writeSource() throws Exception {
+        return writeSource("LoginTest.java", LOGIN_TEST);
+    }
+
+    private File writeSource(String fileName, String content) throws Exception {
+        final var source = Files.createDirectories(folder.getRoot().toPath().resolve("acme")).resolve(fileName);
+        Files.writeString(source, content, UTF_8);
+        return source.toFile();
+    }
+
+    private static List<String> warnings(DiagnosticCollector<JavaFileObject> diagnostics) {
+        return diagnostics.getDiagnostics().stream()
+                .filter(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.WARNING)
+                .map(diagnostic -> diagnostic.getMessage(Locale.ROOT))
+                .collect(Collectors.toList());
+    }
+
+    private static TestSheetDoclet.TestGroups extract(File source, String... docletOptions) throws Exception {
+        return extract(source, null, docletOptions);
+    }
+
+    private static TestSheetDoclet.TestGroups extract(File source, DiagnosticListener<JavaFileObject> diagnostics,
+                                                      String... docletOptions) throws Exception {
+        final var key = TestSheetDocletTest.class.getName() + "#" + System.nanoTime();
+        final List<String> options = new ArrayList<>(List.of("--collect", key));
+        options.addAll(List.of(docletOptions));
+        assertThat(javadoc(source, diagnostics, options)).isTrue();
+        return TestSheetDoclet.COLLECTED.remove(key);
+    }
+
+    /**
+     * @return Whether the javadoc run succeeded
+     */
+    private static boolean javadoc(File source, DiagnosticListener<JavaFileObject> diagnostics, List<String> docletOptions)
+            throws Exception {
+        final DocumentationTool tool = ToolProvider.getSystemDocumentationTool();
+        // The package is specified like a regular run does, rather than the file, whose nested types would be specified too
+        final List<String> options = new ArrayList<>(List.of("-quiet", "-private",
+                "-sourcepath", source.getParentFile().getParent(), "-subpackages", "acme"));
+        options.addAll(docletOptions);
+
+        try (var fileManager = tool.getStandardFileManager(null, null, UTF_8)) {
+            return tool.getTask(null, fileManager, diagnostics, TestSheetDoclet.class, options, null).call();
+        }
+    }
+
+    private static List<String> testIds(TestSheetDoclet.TestGroups testGroups) {
+        return testGroups.groups().stream()
+                .map(group -> group.id + ": " + group.tests.stream().map(test -> test.id).collect(Collectors.joining(", ")))
+                .collect(Collectors.toList());
+    }
+}
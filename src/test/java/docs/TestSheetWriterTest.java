@@ -0,0 +1,68 @@
+package docs;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestSheetWriterTest {
+
+    private static final String NS = "urn:schemas-microsoft-com:office:spreadsheet";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void streamingOutputShouldMatchTheDomOutput() throws Exception {
+        final var testGroups = JacksonWriterTest.createTestGroups();
+        final var domFile = folder.newFile("dom.xml");
+        final var streamingFile = folder.newFile("streaming.xml");
+
+        new TestSheetWriter(testGroups).write(domFile.getPath());
+        new TestSheetWriter(testGroups).writeStreaming(streamingFile.getPath());
+
+        final var dom = parse(domFile);
+        final var streaming = parse(streamingFile);
+        for (String element : List.of("Worksheet", "Column", "Row", "Cell", "Data")) {
+            assertThat(streaming.getElementsByTagNameNS(NS, element).getLength())
+                    .as(element)
+                    .isEqualTo(dom.getElementsByTagNameNS(NS, element).getLength());
+        }
+        assertThat(textContents(streaming, "Data")).containsExactlyElementsOf(textContents(dom, "Data"));
+    }
+
+    @Test
+    public void parallelOutputShouldBeIdenticalToTheStreamingOutput() throws Exception {
+        final var testGroups = JacksonWriterTest.createTestGroups();
+        final var streamingFile = folder.newFile("streaming.xml");
+        final var parallelFile = folder.newFile("parallel.xml");
+
+        new TestSheetWriter(testGroups).writeStreaming(streamingFile.getPath());
+        new TestSheetWriter(testGroups).writeParallel(parallelFile.getPath());
+
+        assertThat(Files.readAllBytes(parallelFile.toPath())).isEqualTo(Files.readAllBytes(streamingFile.toPath()));
+    }
+
+    private static Document parse(File file) throws Exception {
+        final var dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        return dbf.newDocumentBuilder().parse(file);
+    }
+
+    private static List<String> textContents(Document document, String element) {
+        final var nodes = document.getElementsByTagNameNS(NS, element);
+        final var contents = new ArrayList<String>();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            contents.add(nodes.item(i).getTextContent().trim());
+        }
+        return contents;
+    }
+}
@@ -0,0 +1,37 @@
+package docs;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.zip.ZipFile;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class XlsxWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void workbookShouldHaveOneWorksheetPerGroupAndSharedStrings() throws Exception {
+        final var file = folder.newFile("sheet.xlsx");
+
+        new XlsxWriter(JacksonWriterTest.createTestGroups()).write(file.getPath());
+
+        try (var zip = new ZipFile(file)) {
+            assertThat(zip.getEntry("[Content_Types].xml")).isNotNull();
+            assertThat(zip.getEntry("xl/worksheets/sheet1.xml")).isNotNull();
+            assertThat(zip.getEntry("xl/worksheets/sheet2.xml")).isNotNull();
+            assertThat(zip.getEntry("xl/worksheets/sheet3.xml")).isNull();
+
+            final var workbook = new String(zip.getInputStream(zip.getEntry("xl/workbook.xml")).readAllBytes(), UTF_8);
+            assertThat(workbook).contains("name=\"1 - Group 1\"", "name=\"2 - Group 2\"");
+
+            final var sharedStrings = new String(zip.getInputStream(zip.getEntry("xl/sharedStrings.xml")).readAllBytes(), UTF_8);
+            assertThat(sharedStrings).contains("<t>Log in</t>", "<t>User exists</t>");
+            assertThat(sharedStrings.split("<t>Test number</t>", -1)).hasSize(2);
+        }
+    }
+}